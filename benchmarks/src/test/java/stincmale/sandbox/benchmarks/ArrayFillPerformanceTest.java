@@ -1,6 +1,9 @@
 package stincmale.sandbox.benchmarks;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
@@ -11,11 +14,12 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+import static stincmale.sandbox.benchmarks.util.Fixtures.longs;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
 
 /**
  * Test environment:
@@ -59,24 +63,18 @@ import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
 @TestInstance(Lifecycle.PER_CLASS)
 public class ArrayFillPerformanceTest {
   private static final int ARRAY_SIZE = 100_000;
-  private static final long[] arrFilledWithZeros = new long[ARRAY_SIZE];
-  private static final long[] arrFilledWithOnes = new long[ARRAY_SIZE];
-  private static final long[] arrFilledWithIndices = new long[ARRAY_SIZE];
-
-  static {
-    for (int i = 0; i < ARRAY_SIZE; i++) {
-      arrFilledWithZeros[i] = 0;//just to handle it the same way we handle other pre-filled arrays
-      arrFilledWithOnes[i] = 1;
-      arrFilledWithIndices[i] = i;
-    }
-  }
+  //zeros are filled just to handle them the same way we handle other pre-filled arrays
+  private static final long[] arrFilledWithZeros = longs("ArrayFillPerformanceTest.zeros", 1, ARRAY_SIZE, i -> 0);
+  private static final long[] arrFilledWithOnes = longs("ArrayFillPerformanceTest.ones", 1, ARRAY_SIZE, i -> 1);
+  private static final long[] arrFilledWithIndices = longs("ArrayFillPerformanceTest.indices", 1, ARRAY_SIZE, i -> i);
 
   public ArrayFillPerformanceTest() {
   }
 
   @Test
   public void run() throws RunnerException {
-    new Runner(newOptionsBuilder(opts -> opts.forks(20)
+    validate();
+    JmhRunner.run(getClass().getSimpleName(), newOptionsBuilder(opts -> opts.forks(20)
         .warmupTime(milliseconds(100))
         .warmupIterations(5)
         .measurementTime(milliseconds(100))
@@ -85,8 +83,41 @@ public class ArrayFillPerformanceTest {
         .shouldDoGC(true)
         .mode(Mode.Throughput)
         .timeUnit(TimeUnit.MILLISECONDS)
-        .build())
-        .run();
+        .build());
+  }
+
+  /**
+   * Checks that each {@code forLoopX} benchmark and the corresponding {@code systemArrayCopyX} benchmark fill arrays of all lengths
+   * with the same content. Arrays are pre-filled with a value that no benchmark writes, so that a benchmark that skips elements is detected.
+   */
+  @Test
+  public final void validate() {
+    assertEquivalent("forLoop0", this::forLoop0, "systemArrayCopy0", this::systemArrayCopy0);
+    assertEquivalent("forLoop1", this::forLoop1, "systemArrayCopy1", this::systemArrayCopy1);
+    assertEquivalent("forLoopIdx", this::forLoopIdx, "systemArrayCopyIdx", this::systemArrayCopyIdx);
+  }
+
+  private static final void assertEquivalent(
+      final String expectedName, final Consumer<ThreadState> expected, final String actualName, final Consumer<ThreadState> actual) {
+    final String[] lengths;
+    try {
+      lengths = ThreadState.class.getDeclaredField("length").getAnnotation(Param.class).value();
+    } catch (final NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+    for (final String length : lengths) {
+      assertArrayEquals(fill(expected, Integer.parseInt(length)), fill(actual, Integer.parseInt(length)),
+          () -> String.format("%s is not equivalent to %s for length=%s", actualName, expectedName, length));
+    }
+  }
+
+  private static final long[] fill(final Consumer<ThreadState> benchmark, final int length) {
+    final ThreadState state = new ThreadState();
+    state.length = length;
+    state.setup();
+    Arrays.fill(state.arr, -1);
+    benchmark.accept(state);
+    return state.arr;
   }
 
   @Benchmark
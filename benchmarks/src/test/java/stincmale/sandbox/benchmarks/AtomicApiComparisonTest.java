@@ -1,30 +1,58 @@
 package stincmale.sandbox.benchmarks;
 
-import static java.lang.Math.min;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
-import static java.util.concurrent.locks.LockSupport.parkNanos;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
-import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.infra.ThreadParams;
 import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+import stincmale.sandbox.benchmarks.util.CpuAffinity;
+import stincmale.sandbox.benchmarks.util.CpuAffinity.ThreadPlacement;
+import stincmale.sandbox.benchmarks.util.JmhOptions.GarbageCollector;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.newLatencyOptionsBuilder;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
+import stincmale.sandbox.benchmarks.util.ThreadSweep;
+import static stincmale.sandbox.benchmarks.util.Validation.assertAccumulated;
+import static stincmale.sandbox.benchmarks.util.Validation.assertCounted;
+import static stincmale.sandbox.benchmarks.util.Validation.assertUnique;
+import stincmale.sandbox.benchmarks.util.concurrent.Backoff;
+import stincmale.sandbox.benchmarks.util.concurrent.BatchedIdAllocator;
+import stincmale.sandbox.benchmarks.util.concurrent.CasAccumulator;
+import stincmale.sandbox.benchmarks.util.concurrent.FlatCombiningCounter;
+import stincmale.sandbox.benchmarks.util.concurrent.StripedCounter;
 
 /**
  * Test environment:
@@ -142,37 +170,319 @@ import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
  * }</pre>
  */
 @TestInstance(Lifecycle.PER_CLASS)
+@State(Scope.Thread)//JMH creates an instance per benchmark thread, which pins the thread in placeThread
 public class AtomicApiComparisonTest {
   public AtomicApiComparisonTest() {
   }
 
-  public final void runThroughputBenchmarks(final int numberOfThreads) throws RunnerException {
-    new Runner(newOptionsBuilder(opts -> opts.forks(15)
+  @Setup(Level.Trial)
+  public final void placeThread(final ThreadParams threadParams) {
+    CpuAffinity.placeCurrentThread(threadParams.getThreadIndex(), threadParams.getThreadCount());
+  }
+
+  public final void runThroughputBenchmarksThreadSweep(final String benchmarkRegexp) throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName(), throughputOptions(1, benchmarkRegexp));
+  }
+
+  public final void runThroughputBenchmarksForEachGc(final int numberOfThreads, final String benchmarkRegexp) throws RunnerException {
+    validate();
+    JmhRunner.runForEachGc(getClass().getSimpleName() + "-threads" + numberOfThreads,
+        throughputOptions(numberOfThreads, benchmarkRegexp),
+        //Epsilon is not used because the benchmarks that box values may exhaust the heap
+        GarbageCollector.G1, GarbageCollector.PARALLEL, GarbageCollector.Z, GarbageCollector.SHENANDOAH);
+  }
+
+  /**
+   * Runs the benchmarks once per each {@link ThreadPlacement} possible on this machine.
+   * Results for each placement are identified by {@code <id>-threads<n>-<placement>}, e.g., {@code "AtomicApiComparisonTest-threads2-smtSiblings"}.
+   */
+  public final void runThroughputBenchmarksForEachThreadPlacement(final int numberOfThreads, final String benchmarkRegexp)
+      throws RunnerException {
+    validate();
+    for (final ThreadPlacement placement : ThreadPlacement.values()) {
+      if (placement != ThreadPlacement.NONE && (!CpuAffinity.isSupported() || placement.cpus(numberOfThreads).isEmpty())) {
+        System.out.printf("%n# sandbox: skipping the thread placement %s of %d threads because it is impossible on the CPUs %s%n",
+            placement, numberOfThreads, CpuAffinity.allowedCpus());
+        continue;
+      }
+      JmhRunner.run(getClass().getSimpleName() + "-threads" + numberOfThreads + "-" + placement, new OptionsBuilder()
+          .parent(throughputOptions(numberOfThreads, benchmarkRegexp))
+          .jvmArgsAppend("-Dsandbox.threadPlacement=" + placement)
+          .build());
+    }
+  }
+
+  public final void runLatencyBenchmarks(final int numberOfThreads, final String benchmarkRegexp) throws RunnerException {
+    validate();
+    JmhRunner.run(getClass().getSimpleName() + "-latencyThreads" + numberOfThreads, latencyOptions(numberOfThreads, benchmarkRegexp));
+  }
+
+  private final Options throughputOptions(final int numberOfThreads, final String benchmarkRegexp) {
+    return newOptionsBuilder(opts -> opts.forks(15)
         .warmupTime(milliseconds(200))
         .warmupIterations(10)
         .measurementTime(milliseconds(200))
         .measurementIterations(3))
-        .include(includeBenchmarks(getClass()))
+        .include(includeBenchmarks(getClass(), benchmarkRegexp))
         .mode(Mode.Throughput)
         .timeUnit(TimeUnit.MICROSECONDS)
         .threads(numberOfThreads)
-        .build())
-        .run();
+        .build();
+  }
+
+  private final Options latencyOptions(final int numberOfThreads, final String benchmarkRegexp) {
+    return newLatencyOptionsBuilder(opts -> opts.forks(5)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(10)
+        .measurementTime(milliseconds(1000))
+        .measurementIterations(3))
+        .include(includeBenchmarks(getClass(), benchmarkRegexp))
+        .threads(numberOfThreads)
+        .build();
+  }
+
+  /**
+   * Runs the {@code *GetAndIncrement} and {@code *CompareAndSet} benchmarks, including their {@code Manual} and {@code Backoff} variants,
+   * with 1, 2, 4, ..., 2 * (available processors) threads. Other benchmarks have dedicated tests.
+   */
+  @Test
+  public final void throughputThreadSweep() throws RunnerException {
+    runThroughputBenchmarksThreadSweep(".\\w*(GetAndIncrement|CompareAndSet)(Manual)?(Backoff)?$");
+  }
+
+  /**
+   * Compares garbage collectors for the benchmarks that box values, because such benchmarks depend on the allocator and GC barriers.
+   * Runs only if {@code sandbox.gcMatrix} is {@code true}, because it runs the benchmarks once per each collector.
+   */
+  @Test
+  @EnabledIfSystemProperty(named = "sandbox.gcMatrix", matches = "true")
+  public final void throughputThreads4ForEachGc() throws RunnerException {
+    runThroughputBenchmarksForEachGc(4, ".(atomicReference|varHandleReference)Long.*");
+  }
+
+  /**
+   * Compares counters with 1, 2, 4, ..., 64 threads.
+   */
+  @Test
+  public final void countersThroughputThreadSweep() throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName() + "-counters",
+        throughputOptions(1, ".((atomicLong|atomicLongFieldUpdater|varHandleLong)GetAndIncrement|(longAdder|stripedCounter)Increment)$"),
+        64);
+  }
+
+  /**
+   * Compares allocating IDs from a shared counter with allocating them from thread-local blocks with 1, 2, 4, ..., 64 threads.
+   * Only the shared counters give gap-free IDs.
+   */
+  @Test
+  public final void idsThroughputThreadSweep() throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName() + "-ids", throughputOptions(1,
+        ".(atomicLongGetAndIncrement|varHandleLongGetAndIncrement|flatCombiningCounterGetAndIncrement|batchedIdAllocatorNextId)$"),
+        64);
+  }
+
+  /**
+   * Compares accumulating the maximum, the minimum and the sum of squares with 1, 2, 4, ..., 32 threads.
+   * A CAS loop that always attempts a CAS ({@code *Manual}) is compared with {@link CasAccumulator}, which skips the CAS
+   * if the value would not change, and with {@link LongAccumulator}, or {@link LongAdder} for the sum of squares,
+   * because the function of a {@link LongAccumulator} must also be usable for combining its cells, which {@code acc + x * x} is not.
+   * The arguments are the random values from {@link ThreadState}, so the maximum and the minimum stop changing soon after a trial starts,
+   * similarly to the maximal latency of requests.
+   */
+  @Test
+  public final void accumulatorsThroughputThreadSweep() throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName() + "-accumulators",
+        throughputOptions(1, ".(atomicLong|casAccumulator|longAccumulator|longAdder)(Max|Min|SumOfSquares)(Manual)?$"),
+        32);
+  }
+
+  /**
+   * Compares incrementing buckets of a histogram represented by an array of counters with 1, 2, 4, ..., 32 threads,
+   * for uniformly distributed bucket indices and for Zipf-distributed ones, where a few buckets get most of the increments,
+   * as it usually is with latency histograms. Contention is caused both by threads incrementing the same bucket,
+   * and by false sharing of adjacent buckets, which is what padding and per-thread arrays eliminate.
+   */
+  @Test
+  public final void histogramsThroughputThreadSweep() throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName() + "-histograms",
+        throughputOptions(1, ".(atomicLongArray|varHandleArray|paddedVarHandleArray|perThreadArray)Histogram$"),
+        32);
+  }
+
+  /**
+   * Compares throughput when threads share L1 and L2 caches (SMT siblings), only the last level cache (different cores),
+   * or nothing (different sockets), because the cost of transferring the cache line with the counter between threads depends on it.
+   * There are two threads because a core usually has only two SMT siblings.
+   */
+  @Test
+  public final void throughputThreads2ForEachThreadPlacement() throws RunnerException {
+    runThroughputBenchmarksForEachThreadPlacement(2, ".atomicLong(GetAndIncrement|CompareAndSet).*");
+  }
+
+  /**
+   * Compares {@link Backoff} strategies at the level of contention where backoff matters the most.
+   */
+  @Test
+  public final void throughputBackoffThreads32() throws RunnerException {
+    validate();
+    JmhRunner.run(getClass().getSimpleName() + "-backoffThreads32", new OptionsBuilder()
+        .parent(throughputOptions(32, ".(atomicLong|atomicLongFieldUpdater|varHandleLong)(GetAndIncrementManual|CompareAndSet)Backoff$"))
+        .param("backoff", Arrays.stream(Backoff.values())
+            .map(Backoff::name)
+            .toArray(String[]::new))
+        .build());
   }
 
+  /**
+   * Measures false sharing: two threads update two different fields located either next to each other or in different cache lines.
+   * The benchmarks in this class do not suffer from it because each of them updates a single field of {@link BenchmarkState},
+   * but the difference between the scores of the unpadded and padded groups shows how much the scores would be skewed otherwise.
+   */
   @Test
-  public final void throughputThreads1() throws RunnerException {
-    runThroughputBenchmarks(1);
+  public final void throughputCrossTalk() throws RunnerException {
+    JmhRunner.run(getClass().getSimpleName() + "-crossTalk", throughputOptions(2, ".(unpadded|padded)CrossTalk$"));
   }
 
+  /**
+   * Compares latency distributions of the CAS loops with and without {@code backoff}.
+   * Backoff increases throughput under contention, but a parked thread may stall an operation for microseconds,
+   * which is visible only in the tail latencies.
+   */
   @Test
-  public final void throughputThreads4() throws RunnerException {
-    runThroughputBenchmarks(4);
+  public final void latencyBackoffThreads4() throws RunnerException {
+    runLatencyBenchmarks(4, ".(atomicLong|atomicLongFieldUpdater|varHandleLong)(GetAndIncrementManual|CompareAndSet)(Backoff)?$");
   }
 
+  /**
+   * Checks that all {@code *GetAndIncrement*} and {@code *NextId} benchmarks return unique values under contention,
+   * that the {@code *Increment} benchmarks of counters that do not return values,
+   * as well as {@code flatCombiningCounterGetAndIncrement}, which must not skip values, count all increments,
+   * that the {@code *Max*}, {@code *Min*}, {@code *SumOfSquares*} benchmarks accumulate the same values,
+   * and that the {@code *Histogram} benchmarks count all increments of each bucket.
+   */
   @Test
-  public final void throughputThreads32() throws RunnerException {
-    runThroughputBenchmarks(32);
+  public final void validate() {
+    final int numberOfThreads = 4;
+    validateUnique("atomicLongGetAndIncrement", this::atomicLongGetAndIncrement);
+    validateUnique("atomicLongGetAndIncrementManual", this::atomicLongGetAndIncrementManual);
+    validateUniqueWithBackoff("atomicLongGetAndIncrementManualBackoff", this::atomicLongGetAndIncrementManualBackoff);
+    validateUnique("atomicLongFieldUpdaterGetAndIncrement", this::atomicLongFieldUpdaterGetAndIncrement);
+    validateUnique("atomicLongFieldUpdaterGetAndIncrementManual", this::atomicLongFieldUpdaterGetAndIncrementManual);
+    validateUniqueWithBackoff("atomicLongFieldUpdaterGetAndIncrementManualBackoff", this::atomicLongFieldUpdaterGetAndIncrementManualBackoff);
+    validateUnique("varHandleLongGetAndIncrement", this::varHandleLongGetAndIncrement);
+    validateUnique("varHandleLongGetAndIncrementManual", this::varHandleLongGetAndIncrementManual);
+    validateUniqueWithBackoff("varHandleLongGetAndIncrementManualBackoff", this::varHandleLongGetAndIncrementManualBackoff);
+    validateUnique("atomicReferenceLongGetAndIncrement", this::atomicReferenceLongGetAndIncrement);
+    validateUnique("atomicReferenceLongGetAndIncrementManual", this::atomicReferenceLongGetAndIncrementManual);
+    validateUniqueWithBackoff("atomicReferenceLongGetAndIncrementManualBackoff", this::atomicReferenceLongGetAndIncrementManualBackoff);
+    validateUnique("atomicReferenceLongFieldUpdaterGetAndIncrement", this::atomicReferenceLongFieldUpdaterGetAndIncrement);
+    validateUnique("atomicReferenceLongFieldUpdaterGetAndIncrementManual", this::atomicReferenceLongFieldUpdaterGetAndIncrementManual);
+    validateUniqueWithBackoff("atomicReferenceLongFieldUpdaterGetAndIncrementManualBackoff",
+        this::atomicReferenceLongFieldUpdaterGetAndIncrementManualBackoff);
+    validateUnique("varHandleReferenceLongGetAndIncrementManual", this::varHandleReferenceLongGetAndIncrementManual);
+    validateUniqueWithBackoff("varHandleReferenceLongGetAndIncrementManualBackoff", this::varHandleReferenceLongGetAndIncrementManualBackoff);
+    validateUnique("flatCombiningCounterGetAndIncrement", this::flatCombiningCounterGetAndIncrement);
+    validateUnique("batchedIdAllocatorNextId", this::batchedIdAllocatorNextId);
+    final BenchmarkState longAdderState = new BenchmarkState();
+    longAdderState.setup();
+    assertCounted("longAdderIncrement", numberOfThreads, 100_000, threadIdx -> () -> longAdderIncrement(longAdderState),
+        () -> longAdderState.longAdder.sum());
+    final BenchmarkState stripedCounterState = new BenchmarkState();
+    stripedCounterState.setup();
+    assertCounted("stripedCounterIncrement", numberOfThreads, 100_000, threadIdx -> () -> stripedCounterIncrement(stripedCounterState),
+        () -> stripedCounterState.stripedCounter.exactSum());
+    final BenchmarkState flatCombiningCounterState = new BenchmarkState();
+    flatCombiningCounterState.setup();
+    assertCounted("flatCombiningCounterGetAndIncrement", numberOfThreads, 100_000,
+        threadIdx -> () -> flatCombiningCounterGetAndIncrement(flatCombiningCounterState),
+        () -> flatCombiningCounterState.flatCombiningCounter.get());
+    validateAccumulator("atomicLongMaxManual", this::atomicLongMaxManual, state -> state.atomicLongMax.get(), Math::max, Long.MIN_VALUE);
+    validateAccumulator("casAccumulatorMax", this::casAccumulatorMax, state -> state.casAccumulatorMax.get(), Math::max, Long.MIN_VALUE);
+    validateAccumulator("longAccumulatorMax", this::longAccumulatorMax, state -> state.longAccumulatorMax.get(), Math::max, Long.MIN_VALUE);
+    validateAccumulator("atomicLongMinManual", this::atomicLongMinManual, state -> state.atomicLongMin.get(), Math::min, Long.MAX_VALUE);
+    validateAccumulator("casAccumulatorMin", this::casAccumulatorMin, state -> state.casAccumulatorMin.get(), Math::min, Long.MAX_VALUE);
+    validateAccumulator("longAccumulatorMin", this::longAccumulatorMin, state -> state.longAccumulatorMin.get(), Math::min, Long.MAX_VALUE);
+    final LongBinaryOperator sumOfSquares = (acc, x) -> acc + x * x;
+    validateAccumulator("atomicLongSumOfSquaresManual", this::atomicLongSumOfSquaresManual,
+        state -> state.atomicLongSumOfSquares.get(), sumOfSquares, 0);
+    validateAccumulator("casAccumulatorSumOfSquares", this::casAccumulatorSumOfSquares,
+        state -> state.casAccumulatorSumOfSquares.get(), sumOfSquares, 0);
+    validateAccumulator("longAdderSumOfSquares", this::longAdderSumOfSquares,
+        state -> state.longAdderSumOfSquares.sum(), sumOfSquares, 0);
+    for (final HistogramThreadState.IndexDistribution indexDistribution : HistogramThreadState.IndexDistribution.values()) {
+      validateHistogram("atomicLongArrayHistogram", indexDistribution, this::atomicLongArrayHistogram,
+          HistogramState::atomicLongArrayBuckets);
+      validateHistogram("varHandleArrayHistogram", indexDistribution, this::varHandleArrayHistogram,
+          HistogramState::varHandleArrayBuckets);
+      validateHistogram("paddedVarHandleArrayHistogram", indexDistribution, this::paddedVarHandleArrayHistogram,
+          HistogramState::paddedVarHandleArrayBuckets);
+      validateHistogram("perThreadArrayHistogram", indexDistribution, (state, threadState) -> perThreadArrayHistogram(threadState),
+          HistogramState::perThreadArrayBuckets);
+    }
+  }
+
+  private static final void validateUnique(final String benchmarkName, final ToLongFunction<BenchmarkState> benchmark) {
+    validateUniqueWithBackoff(benchmarkName, (state, backoffState) -> benchmark.applyAsLong(state));
+  }
+
+  private static final void validateUniqueWithBackoff(
+      final String benchmarkName, final ToLongBiFunction<BenchmarkState, BackoffState> benchmark) {
+    final int numberOfThreads = 4;
+    final BenchmarkState state = new BenchmarkState();
+    state.setup();
+    assertUnique(benchmarkName, numberOfThreads, 100_000, threadIdx -> {
+      final BackoffState backoffState = new BackoffState();
+      return () -> benchmark.applyAsLong(state, backoffState);
+    });
+  }
+
+  /**
+   * @param function Is applied sequentially to the arguments the {@code benchmark} is invoked with to get the expected accumulated value.
+   */
+  private static final void validateAccumulator(final String benchmarkName, final BiConsumer<AccumulatorState, ThreadState> benchmark,
+      final ToLongFunction<AccumulatorState> accumulatedValue, final LongBinaryOperator function, final long identity) {
+    final int numberOfThreads = 4;
+    final int operationsPerThread = 100_000;
+    final AccumulatorState state = new AccumulatorState();
+    state.setup();
+    final ThreadState[] threadStates = new ThreadState[numberOfThreads];
+    long expectedValue = identity;
+    for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+      final ThreadState threadState = new ThreadState();
+      threadState.setup();
+      for (int i = 0; i < operationsPerThread; i++) {
+        expectedValue = function.applyAsLong(expectedValue, threadState.longs[i & (ThreadState.DISTINCT_VALUES_PER_THREAD - 1)]);
+      }
+      threadStates[threadIdx] = threadState;
+    }
+    assertAccumulated(benchmarkName, numberOfThreads, operationsPerThread, threadIdx -> () -> benchmark.accept(state, threadStates[threadIdx]),
+        () -> accumulatedValue.applyAsLong(state), expectedValue);
+  }
+
+  private static final void validateHistogram(final String benchmarkName, final HistogramThreadState.IndexDistribution indexDistribution,
+      final BiConsumer<HistogramState, HistogramThreadState> benchmark, final Function<HistogramState, long[]> buckets) {
+    final int numberOfThreads = 4;
+    final int operationsPerThread = 100_000;
+    final HistogramState state = new HistogramState();
+    state.setup();
+    final HistogramThreadState[] threadStates = new HistogramThreadState[numberOfThreads];
+    final long[] expectedBuckets = new long[HistogramState.NUMBER_OF_BUCKETS];
+    for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+      final HistogramThreadState threadState = new HistogramThreadState();
+      threadState.indexDistribution = indexDistribution;
+      threadState.setup(state);
+      for (int i = 0; i < operationsPerThread; i++) {
+        expectedBuckets[threadState.indices[i & (HistogramThreadState.INDICES_PER_THREAD - 1)]]++;
+      }
+      threadStates[threadIdx] = threadState;
+    }
+    assertAccumulated(benchmarkName + "-" + indexDistribution, numberOfThreads, operationsPerThread,
+        threadIdx -> () -> benchmark.accept(state, threadStates[threadIdx]), () -> buckets.apply(state), expectedBuckets);
   }
 
   @Benchmark
@@ -191,7 +501,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long atomicLongGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final long atomicLongGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final AtomicLong atomic = state.atomicLong;
     long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -199,11 +509,20 @@ public class AtomicApiComparisonTest {
       if (atomic.compareAndSet(v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
 
+  /**
+   * Unlike {@link #atomicLongGetAndIncrementManualBackoff(BenchmarkState, BackoffState)}, a thread that cannot update the value
+   * does not retry, but waits for another thread to update the value on its behalf.
+   */
+  @Benchmark
+  public final long flatCombiningCounterGetAndIncrement(final BenchmarkState state) {
+    return state.flatCombiningCounter.getAndIncrement();
+  }
+
   @Benchmark
   public final long atomicLongFieldUpdaterGetAndIncrement(final BenchmarkState state) {
     return BenchmarkState.atomicLongFieldUpdater.getAndIncrement(state);
@@ -220,7 +539,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long atomicLongFieldUpdaterGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final long atomicLongFieldUpdaterGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final AtomicLongFieldUpdater<BenchmarkState> atomicFieldUpdater = BenchmarkState.atomicLongFieldUpdater;
     long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -228,7 +547,7 @@ public class AtomicApiComparisonTest {
       if (atomicFieldUpdater.compareAndSet(state, v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -249,7 +568,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long varHandleLongGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final long varHandleLongGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final VarHandle varHandle = BenchmarkState.varHandleLong;
     long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -257,7 +576,7 @@ public class AtomicApiComparisonTest {
       if (varHandle.compareAndSet(state, v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -278,7 +597,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long atomicReferenceLongGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final Long atomicReferenceLongGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final AtomicReference<Long> atomic = state.atomicReferenceLong;
     Long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -286,7 +605,7 @@ public class AtomicApiComparisonTest {
       if (atomic.compareAndSet(v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -307,7 +626,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long atomicReferenceLongFieldUpdaterGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final Long atomicReferenceLongFieldUpdaterGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final AtomicReferenceFieldUpdater<BenchmarkState, Long> atomicFieldUpdater = BenchmarkState.atomicReferenceLongFieldUpdater;
     Long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -315,7 +634,7 @@ public class AtomicApiComparisonTest {
       if (atomicFieldUpdater.compareAndSet(state, v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -331,7 +650,7 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long varHandleReferenceLongGetAndIncrementManualBackoff(final BenchmarkState state) {
+  public final Long varHandleReferenceLongGetAndIncrementManualBackoff(final BenchmarkState state, final BackoffState backoffState) {
     final VarHandle varHandle = BenchmarkState.varHandleReferenceLong;
     Long v;
     for (int numberOfFailures = 1; ; numberOfFailures++) {
@@ -339,7 +658,7 @@ public class AtomicApiComparisonTest {
       if (varHandle.compareAndSet(state, v, v + 1L)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -356,7 +675,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long atomicLongCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final long atomicLongCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final long newV = threadState.getAndAdvanceLong();
     final AtomicLong atomic = benchmarkState.atomicLong;
     long v;
@@ -365,7 +685,7 @@ public class AtomicApiComparisonTest {
       if (atomic.compareAndSet(v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -382,7 +702,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long atomicLongFieldUpdaterCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final long atomicLongFieldUpdaterCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final long newV = threadState.getAndAdvanceLong();
     final AtomicLongFieldUpdater<BenchmarkState> atomicFieldUpdater = BenchmarkState.atomicLongFieldUpdater;
     long v;
@@ -391,7 +712,7 @@ public class AtomicApiComparisonTest {
       if (atomicFieldUpdater.compareAndSet(benchmarkState, v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -408,7 +729,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final long varHandleLongCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final long varHandleLongCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final long newV = threadState.getAndAdvanceLong();
     final VarHandle varHandle = BenchmarkState.varHandleLong;
     long v;
@@ -417,7 +739,7 @@ public class AtomicApiComparisonTest {
       if (varHandle.compareAndSet(benchmarkState, v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -434,7 +756,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long atomicReferenceLongCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final Long atomicReferenceLongCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final Long newV = threadState.getAndAdvanceReferenceLong();
     final AtomicReference<Long> atomic = benchmarkState.atomicReferenceLong;
     Long v;
@@ -443,7 +766,7 @@ public class AtomicApiComparisonTest {
       if (atomic.compareAndSet(v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -460,7 +783,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long atomicReferenceLongFieldUpdaterCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final Long atomicReferenceLongFieldUpdaterCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final Long newV = threadState.getAndAdvanceReferenceLong();
     final AtomicReferenceFieldUpdater<BenchmarkState, Long> atomicFieldUpdater = BenchmarkState.atomicReferenceLongFieldUpdater;
     Long v;
@@ -469,7 +793,7 @@ public class AtomicApiComparisonTest {
       if (atomicFieldUpdater.compareAndSet(benchmarkState, v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
@@ -486,7 +810,8 @@ public class AtomicApiComparisonTest {
   }
 
   @Benchmark
-  public final Long varHandleReferenceLongCompareAndSetBackoff(final BenchmarkState benchmarkState, final ThreadState threadState) {
+  public final Long varHandleReferenceLongCompareAndSetBackoff(
+      final BenchmarkState benchmarkState, final ThreadState threadState, final BackoffState backoffState) {
     final Long newV = threadState.getAndAdvanceReferenceLong();
     final VarHandle varHandle = BenchmarkState.varHandleReferenceLong;
     Long v;
@@ -495,16 +820,145 @@ public class AtomicApiComparisonTest {
       if (varHandle.compareAndSet(benchmarkState, v, newV)) {
         break;
       }
-      backoff(numberOfFailures);
+      backoffState.backoff.backoff(numberOfFailures);
     }
     return v;
   }
 
+  @Benchmark
+  public final void longAdderIncrement(final BenchmarkState state) {
+    state.longAdder.increment();
+  }
+
+  @Benchmark
+  public final void stripedCounterIncrement(final BenchmarkState state) {
+    state.stripedCounter.increment();
+  }
+
+  @Benchmark
+  public final long batchedIdAllocatorNextId(final BenchmarkState state) {
+    return state.batchedIdAllocator.nextId();
+  }
+
+  @Benchmark
+  public final void atomicLongMaxManual(final AccumulatorState state, final ThreadState threadState) {
+    final AtomicLong atomic = state.atomicLongMax;
+    final long x = threadState.getAndAdvanceLong();
+    long v;
+    do {
+      v = atomic.get();
+    } while (!atomic.compareAndSet(v, Math.max(v, x)));
+  }
+
+  @Benchmark
+  public final void casAccumulatorMax(final AccumulatorState state, final ThreadState threadState) {
+    state.casAccumulatorMax.accumulate(threadState.getAndAdvanceLong());
+  }
+
+  @Benchmark
+  public final void longAccumulatorMax(final AccumulatorState state, final ThreadState threadState) {
+    state.longAccumulatorMax.accumulate(threadState.getAndAdvanceLong());
+  }
+
+  @Benchmark
+  public final void atomicLongMinManual(final AccumulatorState state, final ThreadState threadState) {
+    final AtomicLong atomic = state.atomicLongMin;
+    final long x = threadState.getAndAdvanceLong();
+    long v;
+    do {
+      v = atomic.get();
+    } while (!atomic.compareAndSet(v, Math.min(v, x)));
+  }
+
+  @Benchmark
+  public final void casAccumulatorMin(final AccumulatorState state, final ThreadState threadState) {
+    state.casAccumulatorMin.accumulate(threadState.getAndAdvanceLong());
+  }
+
+  @Benchmark
+  public final void longAccumulatorMin(final AccumulatorState state, final ThreadState threadState) {
+    state.longAccumulatorMin.accumulate(threadState.getAndAdvanceLong());
+  }
+
+  @Benchmark
+  public final void atomicLongSumOfSquaresManual(final AccumulatorState state, final ThreadState threadState) {
+    final AtomicLong atomic = state.atomicLongSumOfSquares;
+    final long x = threadState.getAndAdvanceLong();
+    long v;
+    do {
+      v = atomic.get();
+    } while (!atomic.compareAndSet(v, v + x * x));
+  }
+
+  @Benchmark
+  public final void casAccumulatorSumOfSquares(final AccumulatorState state, final ThreadState threadState) {
+    state.casAccumulatorSumOfSquares.accumulate(threadState.getAndAdvanceLong());
+  }
+
+  @Benchmark
+  public final void longAdderSumOfSquares(final AccumulatorState state, final ThreadState threadState) {
+    final long x = threadState.getAndAdvanceLong();
+    state.longAdderSumOfSquares.add(x * x);
+  }
+
+  @Benchmark
+  public final void atomicLongArrayHistogram(final HistogramState state, final HistogramThreadState threadState) {
+    state.atomicLongArray.getAndIncrement(threadState.getAndAdvanceIndex());
+  }
+
+  @Benchmark
+  public final void varHandleArrayHistogram(final HistogramState state, final HistogramThreadState threadState) {
+    HistogramState.longArrayElement.getAndAdd(state.longArray, threadState.getAndAdvanceIndex(), 1L);
+  }
+
+  @Benchmark
+  public final void paddedVarHandleArrayHistogram(final HistogramState state, final HistogramThreadState threadState) {
+    HistogramState.longArrayElement.getAndAdd(state.paddedLongArray, HistogramState.paddedIdx(threadState.getAndAdvanceIndex()), 1L);
+  }
+
+  /**
+   * Each thread has its own array, hence an increment is a read and an opaque write instead of an atomic read-modify-write,
+   * but reading the histogram requires merging the arrays of all threads.
+   */
+  @Benchmark
+  public final void perThreadArrayHistogram(final HistogramThreadState threadState) {
+    final long[] buckets = threadState.buckets;
+    final int idx = threadState.getAndAdvanceIndex();
+    HistogramState.longArrayElement.setOpaque(buckets, idx, buckets[idx] + 1L);
+  }
+
+  @Benchmark
+  @Group("unpaddedCrossTalk")
+  @GroupThreads(1)
+  public final long unpaddedCrossTalkFirst(final UnpaddedCrossTalkState state) {
+    return (long)UnpaddedCrossTalkState.first.getAndAdd(state, 1L);
+  }
+
+  @Benchmark
+  @Group("unpaddedCrossTalk")
+  @GroupThreads(1)
+  public final long unpaddedCrossTalkSecond(final UnpaddedCrossTalkState state) {
+    return (long)UnpaddedCrossTalkState.second.getAndAdd(state, 1L);
+  }
+
+  @Benchmark
+  @Group("paddedCrossTalk")
+  @GroupThreads(1)
+  public final long paddedCrossTalkFirst(final PaddedCrossTalkState state) {
+    return (long)PaddedCrossTalkState.first.getAndAdd(state, 1L);
+  }
+
+  @Benchmark
+  @Group("paddedCrossTalk")
+  @GroupThreads(1)
+  public final long paddedCrossTalkSecond(final PaddedCrossTalkState state) {
+    return (long)PaddedCrossTalkState.second.getAndAdd(state, 1L);
+  }
+
   @State(Scope.Benchmark)
   public static class BenchmarkState {
-    private static final int FAILURES_WITHOUT_BACKOFF = 0;
-    private static final int EXPONENTIAL_BACKOFF_FACTOR = 2;
-    private static final int MAX_BACKOFF_NANOS = 10;
+    private static final int MIN_ID_BLOCK_SIZE = 16;
+    private static final int MAX_ID_BLOCK_SIZE = 4096;
     private static final AtomicLongFieldUpdater<BenchmarkState> atomicLongFieldUpdater;
     private static final AtomicReferenceFieldUpdater<BenchmarkState, Long> atomicReferenceLongFieldUpdater;
     private static final VarHandle varHandleLong;
@@ -524,6 +978,10 @@ public class AtomicApiComparisonTest {
 
     private AtomicLong atomicLong;
     private AtomicReference<Long> atomicReferenceLong;
+    private LongAdder longAdder;
+    private StripedCounter stripedCounter;
+    private BatchedIdAllocator batchedIdAllocator;
+    private FlatCombiningCounter flatCombiningCounter;
     private volatile long forAtomicLongFieldUpdater;
     private volatile Long forAtomicReferenceLongFieldUpdater;
     private volatile long forVarHandleLong;
@@ -536,6 +994,10 @@ public class AtomicApiComparisonTest {
     public final void setup() {
       atomicLong = new AtomicLong();
       atomicReferenceLong = new AtomicReference<>(0L);
+      longAdder = new LongAdder();
+      stripedCounter = new StripedCounter();
+      batchedIdAllocator = new BatchedIdAllocator(MIN_ID_BLOCK_SIZE, MAX_ID_BLOCK_SIZE);
+      flatCombiningCounter = new FlatCombiningCounter();
       atomicLongFieldUpdater.set(this, 0L);
       atomicReferenceLongFieldUpdater.set(this, 0L);
       varHandleLong.setVolatile(this, 0L);
@@ -582,9 +1044,253 @@ public class AtomicApiComparisonTest {
     }
   }
 
-  private static final void backoff(final int numberOfFailures) {
-    if (numberOfFailures > BenchmarkState.FAILURES_WITHOUT_BACKOFF) {
-      parkNanos(min(numberOfFailures * BenchmarkState.EXPONENTIAL_BACKOFF_FACTOR, BenchmarkState.MAX_BACKOFF_NANOS));
+  @State(Scope.Benchmark)
+  public static class AccumulatorState {
+    private AtomicLong atomicLongMax;
+    private CasAccumulator casAccumulatorMax;
+    private LongAccumulator longAccumulatorMax;
+    private AtomicLong atomicLongMin;
+    private CasAccumulator casAccumulatorMin;
+    private LongAccumulator longAccumulatorMin;
+    private AtomicLong atomicLongSumOfSquares;
+    private CasAccumulator casAccumulatorSumOfSquares;
+    private LongAdder longAdderSumOfSquares;
+
+    public AccumulatorState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setup() {
+      atomicLongMax = new AtomicLong(Long.MIN_VALUE);
+      casAccumulatorMax = CasAccumulator.max();
+      longAccumulatorMax = new LongAccumulator(Math::max, Long.MIN_VALUE);
+      atomicLongMin = new AtomicLong(Long.MAX_VALUE);
+      casAccumulatorMin = CasAccumulator.min();
+      longAccumulatorMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+      atomicLongSumOfSquares = new AtomicLong();
+      casAccumulatorSumOfSquares = CasAccumulator.sumOfSquares();
+      longAdderSumOfSquares = new LongAdder();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class HistogramState {
+    private static final int NUMBER_OF_BUCKETS = 64;
+    private static final int PADDED_SLOT_LONGS = 16;//128 bytes, see PaddedCrossTalkState
+    private static final VarHandle longArrayElement = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private AtomicLongArray atomicLongArray;
+    private long[] longArray;
+    private long[] paddedLongArray;//a bucket idx is at paddedIdx(idx), all other elements are padding
+    private Queue<long[]> perThreadLongArrays;//registered by HistogramThreadState
+
+    public HistogramState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setup() {
+      atomicLongArray = new AtomicLongArray(NUMBER_OF_BUCKETS);
+      longArray = new long[NUMBER_OF_BUCKETS];
+      paddedLongArray = new long[paddedIdx(NUMBER_OF_BUCKETS) + 1];//the first and the last buckets are also padded from both sides
+      perThreadLongArrays = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * @return A new per-thread array, which is merged with other per-thread arrays by {@link #perThreadArrayBuckets()}.
+     */
+    private final long[] newPerThreadLongArray() {
+      final long[] result = new long[NUMBER_OF_BUCKETS];
+      perThreadLongArrays.add(result);
+      return result;
+    }
+
+    private static final int paddedIdx(final int idx) {
+      return (idx + 1) * PADDED_SLOT_LONGS;
+    }
+
+    private final long[] atomicLongArrayBuckets() {
+      final long[] result = new long[NUMBER_OF_BUCKETS];
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+        result[i] = atomicLongArray.get(i);
+      }
+      return result;
+    }
+
+    private final long[] varHandleArrayBuckets() {
+      final long[] result = new long[NUMBER_OF_BUCKETS];
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+        result[i] = (long)longArrayElement.getVolatile(longArray, i);
+      }
+      return result;
+    }
+
+    private final long[] paddedVarHandleArrayBuckets() {
+      final long[] result = new long[NUMBER_OF_BUCKETS];
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+        result[i] = (long)longArrayElement.getVolatile(paddedLongArray, paddedIdx(i));
+      }
+      return result;
+    }
+
+    /**
+     * Merges the per-thread arrays. The result is not a snapshot if the arrays are updated concurrently.
+     */
+    private final long[] perThreadArrayBuckets() {
+      final long[] result = new long[NUMBER_OF_BUCKETS];
+      for (final long[] buckets : perThreadLongArrays) {
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+          result[i] += (long)longArrayElement.getOpaque(buckets, i);
+        }
+      }
+      return result;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class HistogramThreadState {
+    private static final int INDICES_PER_THREAD = 1024;//2^10, must be a power of 2
+
+    @Param({"UNIFORM", "ZIPF"})
+    private IndexDistribution indexDistribution;
+    private int[] indices;
+    private int idx;
+    private long[] buckets;//used only by perThreadArrayHistogram
+
+    public HistogramThreadState() {
+    }
+
+    /**
+     * JMH sets up the {@code histogramState} before injecting it.
+     */
+    @Setup(Level.Trial)
+    public final void setup(final HistogramState histogramState) {
+      indices = indexDistribution.indices(INDICES_PER_THREAD, HistogramState.NUMBER_OF_BUCKETS);
+      idx = 0;
+      buckets = histogramState.newPerThreadLongArray();
+    }
+
+    private final int getAndAdvanceIndex() {
+      final int result = indices[idx];
+      idx = (idx + 1) & (INDICES_PER_THREAD - 1);//(idx + 1) % INDICES_PER_THREAD
+      return result;
+    }
+
+    public enum IndexDistribution {
+      UNIFORM {
+        @Override
+        public final int[] indices(final int numberOfIndices, final int numberOfBuckets) {
+          return ThreadLocalRandom.current()
+              .ints(numberOfIndices, 0, numberOfBuckets)
+              .toArray();
+        }
+      },
+      /**
+       * The probability of a bucket {@code k} is proportional to {@code 1 / (k + 1)},
+       * e.g., with 64 buckets the bucket 0 gets about 21% of the indices, and the first 8 buckets get about 57%.
+       */
+      ZIPF {
+        @Override
+        public final int[] indices(final int numberOfIndices, final int numberOfBuckets) {
+          final double[] cumulativeWeights = new double[numberOfBuckets];
+          double totalWeight = 0;
+          for (int k = 0; k < numberOfBuckets; k++) {
+            totalWeight += 1d / (k + 1);
+            cumulativeWeights[k] = totalWeight;
+          }
+          return ThreadLocalRandom.current()
+              .doubles(numberOfIndices, 0, totalWeight)
+              .mapToInt(weight -> {
+                final int searchResult = Arrays.binarySearch(cumulativeWeights, weight);
+                return searchResult >= 0 ? searchResult : -searchResult - 1;
+              })
+              .toArray();
+        }
+      };
+
+      /**
+       * @return Random indices from {@code [0, numberOfBuckets)}.
+       */
+      public abstract int[] indices(int numberOfIndices, int numberOfBuckets);
+    }
+  }
+
+  /**
+   * Fields that are likely to share a cache line because they are declared next to each other.
+   */
+  @State(Scope.Group)
+  public static class UnpaddedCrossTalkState {
+    private static final VarHandle first;
+    private static final VarHandle second;
+
+    static {
+      try {
+        first = MethodHandles.lookup().findVarHandle(UnpaddedCrossTalkState.class, "forFirst", long.class);
+        second = MethodHandles.lookup().findVarHandle(UnpaddedCrossTalkState.class, "forSecond", long.class);
+      } catch (final NoSuchFieldException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private volatile long forFirst;
+    private volatile long forSecond;
+
+    public UnpaddedCrossTalkState() {
+    }
+  }
+
+  /**
+   * Fields separated by padding the same way the value of a {@link StripedCounter} cell is padded, see it for why the padding is 128 bytes
+   * and why it is declared in a separate class.
+   */
+  @State(Scope.Group)
+  public static class PaddedCrossTalkState extends PaddedCrossTalkStateSecond {
+    private static final VarHandle first;
+    private static final VarHandle second;
+
+    static {
+      try {
+        first = MethodHandles.lookup().findVarHandle(PaddedCrossTalkStateFirst.class, "forFirst", long.class);
+        second = MethodHandles.lookup().findVarHandle(PaddedCrossTalkStateSecond.class, "forSecond", long.class);
+      } catch (final NoSuchFieldException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public PaddedCrossTalkState() {
+    }
+  }
+
+  public abstract static class PaddedCrossTalkStateFirst {
+    private volatile long forFirst;
+
+    protected PaddedCrossTalkStateFirst() {
+    }
+  }
+
+  @SuppressWarnings("unused")
+  public abstract static class PaddedCrossTalkStatePadding extends PaddedCrossTalkStateFirst {
+    private long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+
+    protected PaddedCrossTalkStatePadding() {
+    }
+  }
+
+  public abstract static class PaddedCrossTalkStateSecond extends PaddedCrossTalkStatePadding {
+    private volatile long forSecond;
+
+    protected PaddedCrossTalkStateSecond() {
+    }
+  }
+
+  /**
+   * {@link Backoff#PARK_LINEAR} is used by default, other strategies may be specified via {@link OptionsBuilder#param(String, String...)}.
+   */
+  @State(Scope.Thread)
+  public static class BackoffState {
+    @Param({"PARK_LINEAR"})
+    private Backoff backoff = Backoff.PARK_LINEAR;
+
+    public BackoffState() {
     }
   }
 }
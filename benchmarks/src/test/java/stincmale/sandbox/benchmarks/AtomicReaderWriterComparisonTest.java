@@ -0,0 +1,220 @@
+package stincmale.sandbox.benchmarks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
+import static stincmale.sandbox.benchmarks.util.Validation.assertCounted;
+
+/**
+ * Compares counters that are incremented by writer threads while being read by reader threads,
+ * unlike {@link AtomicApiComparisonTest}, where all threads update a counter.
+ * Each counter is a JMH group of the {@code *Read} and {@code *Write} benchmarks,
+ * and the number of readers and writers in a group is specified via {@link org.openjdk.jmh.runner.options.OptionsBuilder#threadGroups(int...)}:
+ * JMH orders benchmarks of a group by name, so the first number is the number of readers and the second one is the number of writers.
+ * <p>
+ * JMH reports the score of each group as a whole, as well as the scores of readers and writers separately.
+ * There are either many readers and a single writer, e.g., 15:1 or 63:1, as with a counter that is mostly read,
+ * or a single reader and many writers, e.g., 1:15 or 1:63, as with metrics that are updated by every request processing thread
+ * and are read by a reporter. Reads of a counter that is written concurrently are slowed down because the cache line with the counter
+ * is invalidated by each write, which does not happen in single-threaded or read-only benchmarks. {@link LongAdder#sum()} is additionally
+ * slowed down by reading all cells, while writes to a {@link LongAdder} scale better with the number of writers than writes to other counters.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class AtomicReaderWriterComparisonTest {
+  public AtomicReaderWriterComparisonTest() {
+  }
+
+  /**
+   * Results are identified by {@code <id>-readers<r>Writers<w>}, e.g., {@code "AtomicReaderWriterComparisonTest-readers1Writers15"}.
+   */
+  public final void runThroughputBenchmarks(final int numberOfReaders, final int numberOfWriters) throws RunnerException {
+    validate();
+    JmhRunner.run(getClass().getSimpleName() + "-readers" + numberOfReaders + "Writers" + numberOfWriters,
+        newOptionsBuilder(opts -> opts.forks(15)
+            .warmupTime(milliseconds(200))
+            .warmupIterations(10)
+            .measurementTime(milliseconds(200))
+            .measurementIterations(3))
+            .include(includeBenchmarks(getClass()))
+            .mode(Mode.Throughput)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .threadGroups(numberOfReaders, numberOfWriters)
+            .threads(numberOfReaders + numberOfWriters)
+            .build());
+  }
+
+  @Test
+  public final void throughputReaders1Writers1() throws RunnerException {
+    runThroughputBenchmarks(1, 1);
+  }
+
+  @Test
+  public final void throughputReaders15Writers1() throws RunnerException {
+    runThroughputBenchmarks(15, 1);
+  }
+
+  @Test
+  public final void throughputReaders63Writers1() throws RunnerException {
+    runThroughputBenchmarks(63, 1);
+  }
+
+  /**
+   * Resembles metrics that are updated by many request processing threads and are read by a single reporter.
+   */
+  @Test
+  public final void throughputReaders1Writers15() throws RunnerException {
+    runThroughputBenchmarks(1, 15);
+  }
+
+  @Test
+  public final void throughputReaders1Writers63() throws RunnerException {
+    runThroughputBenchmarks(1, 63);
+  }
+
+  /**
+   * Checks that each {@code *Read} benchmark returns the number of increments done by the corresponding {@code *Write} benchmark.
+   */
+  @Test
+  public final void validate() {
+    validateCounted("atomicLongWrite", this::atomicLongWrite, this::atomicLongRead);
+    validateCounted("longAdderWrite", this::longAdderWrite, this::longAdderRead);
+    validateCounted("varHandleLongWrite", this::varHandleLongWrite, this::varHandleLongRead);
+    validateCounted("varHandleLongAcquireWrite", this::varHandleLongAcquireWrite, this::varHandleLongAcquireRead);
+    validateCounted("atomicReferenceLongWrite", this::atomicReferenceLongWrite, this::atomicReferenceLongRead);
+  }
+
+  private static final void validateCounted(
+      final String benchmarkName, final Consumer<BenchmarkState> write, final ToLongFunction<BenchmarkState> read) {
+    final BenchmarkState state = new BenchmarkState();
+    state.setup();
+    assertCounted(benchmarkName, 4, 100_000, threadIdx -> () -> write.accept(state), () -> read.applyAsLong(state));
+  }
+
+  @Benchmark
+  @Group("atomicLong")
+  @GroupThreads(1)
+  public final long atomicLongRead(final BenchmarkState state) {
+    return state.atomicLong.get();
+  }
+
+  @Benchmark
+  @Group("atomicLong")
+  @GroupThreads(1)
+  public final long atomicLongWrite(final BenchmarkState state) {
+    return state.atomicLong.getAndIncrement();
+  }
+
+  @Benchmark
+  @Group("longAdder")
+  @GroupThreads(1)
+  public final long longAdderRead(final BenchmarkState state) {
+    return state.longAdder.sum();
+  }
+
+  @Benchmark
+  @Group("longAdder")
+  @GroupThreads(1)
+  public final void longAdderWrite(final BenchmarkState state) {
+    state.longAdder.increment();
+  }
+
+  @Benchmark
+  @Group("varHandleLong")
+  @GroupThreads(1)
+  public final long varHandleLongRead(final BenchmarkState state) {
+    return (long)BenchmarkState.varHandleLong.getVolatile(state);
+  }
+
+  @Benchmark
+  @Group("varHandleLong")
+  @GroupThreads(1)
+  public final long varHandleLongWrite(final BenchmarkState state) {
+    return (long)BenchmarkState.varHandleLong.getAndAdd(state, 1L);
+  }
+
+  /**
+   * Acquire is enough for a reader that only needs to see the writes that happened-before the write of the value it reads.
+   */
+  @Benchmark
+  @Group("varHandleLongAcquire")
+  @GroupThreads(1)
+  public final long varHandleLongAcquireRead(final BenchmarkState state) {
+    return (long)BenchmarkState.varHandleLong.getAcquire(state);
+  }
+
+  @Benchmark
+  @Group("varHandleLongAcquire")
+  @GroupThreads(1)
+  public final long varHandleLongAcquireWrite(final BenchmarkState state) {
+    return (long)BenchmarkState.varHandleLong.getAndAdd(state, 1L);
+  }
+
+  @Benchmark
+  @Group("atomicReferenceLong")
+  @GroupThreads(1)
+  public final Long atomicReferenceLongRead(final BenchmarkState state) {
+    return state.atomicReferenceLong.get();
+  }
+
+  @Benchmark
+  @Group("atomicReferenceLong")
+  @GroupThreads(1)
+  public final Long atomicReferenceLongWrite(final BenchmarkState state) {
+    final AtomicReference<Long> atomic = state.atomicReferenceLong;
+    Long v;
+    do {
+      v = atomic.get();
+    } while (!atomic.compareAndSet(v, v + 1L));
+    return v;
+  }
+
+  @State(Scope.Group)
+  public static class BenchmarkState {
+    private static final VarHandle varHandleLong;
+
+    static {
+      try {
+        varHandleLong = MethodHandles.lookup().findVarHandle(BenchmarkState.class, "forVarHandleLong", long.class);
+      } catch (final NoSuchFieldException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private AtomicLong atomicLong;
+    private AtomicReference<Long> atomicReferenceLong;
+    private LongAdder longAdder;
+    private volatile long forVarHandleLong;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setup() {
+      atomicLong = new AtomicLong();
+      atomicReferenceLong = new AtomicReference<>(0L);
+      longAdder = new LongAdder();
+      varHandleLong.setVolatile(this, 0L);
+    }
+  }
+}
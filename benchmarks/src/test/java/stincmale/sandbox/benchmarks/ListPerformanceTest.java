@@ -19,11 +19,13 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+import stincmale.sandbox.benchmarks.util.JmhOptions.GarbageCollector;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
 
 /**
  * Test environment:
@@ -66,7 +68,21 @@ public class ListPerformanceTest {
 
   @Test
   public void run() throws RunnerException {
-    new Runner(newOptionsBuilder(opts -> opts.forks(10)
+    JmhRunner.run(getClass().getSimpleName(), options());
+  }
+
+  /**
+   * Compares garbage collectors because {@link #createAndFillViaAdd(ThreadStateForAdding)} depends on the allocator.
+   * Epsilon is not used because it would exhaust the heap.
+   */
+  @Test
+  public void runForEachGc() throws RunnerException {
+    JmhRunner.runForEachGc(getClass().getSimpleName(), options(),
+        GarbageCollector.G1, GarbageCollector.PARALLEL, GarbageCollector.Z, GarbageCollector.SHENANDOAH);
+  }
+
+  private Options options() {
+    return newOptionsBuilder(opts -> opts.forks(10)
         .warmupTime(milliseconds(100))
         .warmupIterations(12)
         .measurementTime(milliseconds(100))
@@ -75,8 +91,7 @@ public class ListPerformanceTest {
         .shouldDoGC(true)
         .mode(Mode.Throughput)
         .timeUnit(TimeUnit.MILLISECONDS)
-        .build())
-        .run();
+        .build();
   }
 
   @Benchmark
@@ -1,5 +1,6 @@
 package stincmale.sandbox.benchmarks;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
@@ -11,12 +12,13 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.jvmArgsDisableGc;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.Fixtures;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
 
 /**
  * Test environment:
@@ -64,52 +66,69 @@ import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
 @TestInstance(Lifecycle.PER_CLASS)
 public class PrimitiveDataTypeMathPerformanceTest {
   private static final int NUMBER_OF_VALUES = 64;//2^6, must be a power of 2
+  private static final long OPERANDS_SEED = 1L;
   private static final int[] operandsInt;
   private static final float[] operandsFloat;
   private static final long[] operandsLong;
   private static final double[] operandsDouble;
 
   static {
-    final Random rnd = new Random(1L);
+    /*
+     * The operands are stored in the fixture one kind after another:
+     * NUMBER_OF_VALUES ints, NUMBER_OF_VALUES floats, NUMBER_OF_VALUES longs, NUMBER_OF_VALUES doubles.
+     */
+    final int floatsOffset = NUMBER_OF_VALUES * Integer.BYTES;
+    final int longsOffset = floatsOffset + NUMBER_OF_VALUES * Float.BYTES;
+    final int doublesOffset = longsOffset + NUMBER_OF_VALUES * Long.BYTES;
+    final ByteBuffer operands = Fixtures.map(
+        "PrimitiveDataTypeMathPerformanceTest.operands", OPERANDS_SEED, doublesOffset + NUMBER_OF_VALUES * Double.BYTES, buffer -> {
+          final Random rnd = new Random(OPERANDS_SEED);
+          for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+            {//generate an int
+              int rndInt = rnd.nextInt();
+              if (rndInt > Integer.MIN_VALUE / 2 && rndInt < Integer.MAX_VALUE / 2) {
+                rndInt *= 2;
+              }
+              buffer.putInt(i * Integer.BYTES, rndInt);
+            }
+            {//generate a float
+              float rndFloat = rnd.nextFloat();
+              if (rndFloat > Float.MIN_VALUE / 2 && rndFloat < Float.MAX_VALUE / 2) {
+                rndFloat *= 2;
+              }
+              buffer.putFloat(floatsOffset + i * Float.BYTES, rndFloat);
+            }
+            {//generate a long
+              long rndLong = rnd.nextLong();
+              if (rndLong > Long.MIN_VALUE / 2 && rndLong < Long.MAX_VALUE / 2) {
+                rndLong *= 2;
+              }
+              buffer.putLong(longsOffset + i * Long.BYTES, rndLong);
+            }
+            {//generate a double
+              double rndDouble = rnd.nextDouble();
+              if (rndDouble > Double.MIN_VALUE / 2 && rndDouble < Double.MAX_VALUE / 2) {
+                rndDouble *= 2;
+              }
+              buffer.putDouble(doublesOffset + i * Double.BYTES, rndDouble);
+            }
+          }
+        });
     operandsInt = new int[NUMBER_OF_VALUES * 2];
     operandsFloat = new float[NUMBER_OF_VALUES * 2];
     operandsLong = new long[NUMBER_OF_VALUES];
     operandsDouble = new double[NUMBER_OF_VALUES];
     for (int i = 0; i < NUMBER_OF_VALUES; i++) {
-      {//fill operandsInt
-        int rndInt = rnd.nextInt();
-        if (rndInt > Integer.MIN_VALUE / 2 && rndInt < Integer.MAX_VALUE / 2) {
-          rndInt *= 2;
-        }
-        /*
-         * The index for operandsInt/operandsFloat is i * 2
-         * to make sure that the number of both int/float and long/double array elements is about the same for each cache line.
-         * This of course only works if the underlying software and hardware actually uses two times as much memory
-         * for long/double comparing to int/float and allocates all array elements contiguously in memory.
-         */
-        operandsInt[i * 2] = rndInt;
-      }
-      {//fill operandsFloat
-        float rndFloat = rnd.nextFloat();
-        if (rndFloat > Float.MIN_VALUE / 2 && rndFloat < Float.MAX_VALUE / 2) {
-          rndFloat *= 2;
-        }
-        operandsFloat[i * 2] = rndFloat;
-      }
-      {//fill operandsLong
-        long rndLong = rnd.nextLong();
-        if (rndLong > Long.MIN_VALUE / 2 && rndLong < Long.MAX_VALUE / 2) {
-          rndLong *= 2;
-        }
-        operandsLong[i] = rndLong;
-      }
-      {//fill operandsDouble
-        double rndDouble = rnd.nextDouble();
-        if (rndDouble > Double.MIN_VALUE / 2 && rndDouble < Double.MAX_VALUE / 2) {
-          rndDouble *= 2;
-        }
-        operandsDouble[i] = rndDouble;
-      }
+      /*
+       * The index for operandsInt/operandsFloat is i * 2
+       * to make sure that the number of both int/float and long/double array elements is about the same for each cache line.
+       * This of course only works if the underlying software and hardware actually uses two times as much memory
+       * for long/double comparing to int/float and allocates all array elements contiguously in memory.
+       */
+      operandsInt[i * 2] = operands.getInt(i * Integer.BYTES);
+      operandsFloat[i * 2] = operands.getFloat(floatsOffset + i * Float.BYTES);
+      operandsLong[i] = operands.getLong(longsOffset + i * Long.BYTES);
+      operandsDouble[i] = operands.getDouble(doublesOffset + i * Double.BYTES);
     }
   }
 
@@ -118,7 +137,7 @@ public class PrimitiveDataTypeMathPerformanceTest {
 
   @Test
   public void run() throws RunnerException {
-    new Runner(newOptionsBuilder(opts -> opts.forks(10)
+    JmhRunner.run(getClass().getSimpleName(), newOptionsBuilder(opts -> opts.forks(10)
         .warmupTime(milliseconds(100))
         .warmupIterations(10)
         .measurementTime(milliseconds(100))
@@ -127,8 +146,7 @@ public class PrimitiveDataTypeMathPerformanceTest {
         .jvmArgsAppend(jvmArgsDisableGc())
         .mode(Mode.AverageTime)
         .timeUnit(TimeUnit.NANOSECONDS)
-        .build())
-        .run();
+        .build());
   }
 
   @Benchmark
@@ -1,6 +1,7 @@
 package stincmale.sandbox.benchmarks;
 
 import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
@@ -10,12 +11,12 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
-import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.jvmArgsDisableGc;
 import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.JmhRunner;
 
 /**
  * Test environment:
@@ -35,13 +36,15 @@ public class RemainderPerformanceTest {
   private static final long DENOMINATOR_POW2 = 1024;//2^10, must be a power of 2
   private static final long BITWISE_DENOMINATOR_POW2 = DENOMINATOR_POW2 - 1;
   private static final long DENOMINATOR = DENOMINATOR_POW2 - 1;
+  private static final long INITIAL_COUNTER = Long.MAX_VALUE / 2;
 
   public RemainderPerformanceTest() {
   }
 
   @Test
   public void run() throws RunnerException {
-    new Runner(newOptionsBuilder(opts -> opts.forks(10)
+    validate();
+    JmhRunner.run(getClass().getSimpleName(), newOptionsBuilder(opts -> opts.forks(10)
         .warmupTime(milliseconds(100))
         .warmupIterations(10)
         .measurementTime(milliseconds(100))
@@ -50,8 +53,27 @@ public class RemainderPerformanceTest {
         .jvmArgsAppend(jvmArgsDisableGc())
         .mode(Mode.AverageTime)
         .timeUnit(TimeUnit.NANOSECONDS)
-        .build())
-        .run();
+        .build());
+  }
+
+  /**
+   * Checks that {@link #bitwise(ThreadState)} and {@link #ordinaryPow2(ThreadState)} return the same values
+   * for counters starting from 0, from the initial counter used by the benchmarks, and up to {@link Long#MAX_VALUE},
+   * each time covering a few periods of the remainder.
+   */
+  @Test
+  public final void validate() {
+    final long numberOfValues = 4 * DENOMINATOR_POW2;
+    for (final long firstCounter : new long[] {0, INITIAL_COUNTER, Long.MAX_VALUE - numberOfValues + 1}) {
+      final ThreadState ordinaryPow2State = new ThreadState();
+      final ThreadState bitwiseState = new ThreadState();
+      ordinaryPow2State.counter = firstCounter;
+      bitwiseState.counter = firstCounter;
+      for (long i = 0; i < numberOfValues; i++) {
+        final long counter = ordinaryPow2State.counter;
+        assertEquals(ordinaryPow2(ordinaryPow2State), bitwise(bitwiseState), () -> String.format("counter=%d", counter));
+      }
+    }
   }
 
   @Benchmark
@@ -89,7 +111,7 @@ public class RemainderPerformanceTest {
 
     @Setup(Level.Iteration)
     public final void setup() {
-      counter = Long.MAX_VALUE / 2;
+      counter = INITIAL_COUNTER;
     }
   }
 }
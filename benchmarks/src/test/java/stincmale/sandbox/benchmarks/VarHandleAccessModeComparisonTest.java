@@ -0,0 +1,287 @@
+package stincmale.sandbox.benchmarks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.RunnerException;
+import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.includeBenchmarks;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+import stincmale.sandbox.benchmarks.util.ThreadSweep;
+import static stincmale.sandbox.benchmarks.util.Validation.assertUnique;
+
+/**
+ * Compares {@link VarHandle.AccessMode}s and fences for reading, writing and incrementing a single shared {@code long} field
+ * with 1, 4 and 32 threads, where all threads run the same benchmark method.
+ * <ul>
+ *   <li>{@code *Get} benchmarks read the field. There are no concurrent writes, so they show the cost of the ordering constraints alone.</li>
+ *   <li>{@code *Set} benchmarks write the field, hence with more than 1 thread they also include the cost of transferring the cache line
+ *   with the field between CPUs.</li>
+ *   <li>{@code *GetAndIncrement} benchmarks increment the field in a CAS loop and return the previous value.
+ *   Weak CAS may fail spuriously, which does not make the loops incorrect.</li>
+ *   <li>{@code *Fence*} benchmarks use plain access with explicit fences, e.g., {@link VarHandle#acquireFence()} after a plain read,
+ *   which is at least as strong as the corresponding access mode.</li>
+ * </ul>
+ * The field is not declared {@code volatile} because access modes of a {@link VarHandle} do not depend on it.
+ * Plain reads are not hoisted out of the JMH measurement loop, because the loop reads a volatile field on each iteration.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class VarHandleAccessModeComparisonTest {
+  public VarHandleAccessModeComparisonTest() {
+  }
+
+  @Test
+  public final void throughput() throws RunnerException {
+    validate();
+    ThreadSweep.run(getClass().getSimpleName(), newOptionsBuilder(opts -> opts.forks(10)
+        .warmupTime(milliseconds(200))
+        .warmupIterations(10)
+        .measurementTime(milliseconds(200))
+        .measurementIterations(3))
+        .include(includeBenchmarks(getClass()))
+        .mode(Mode.Throughput)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .build(),
+        List.of(1, 4, 32));
+  }
+
+  /**
+   * Checks that all {@code *GetAndIncrement} benchmarks return unique values under contention.
+   */
+  @Test
+  public final void validate() {
+    validateUnique("compareAndSetGetAndIncrement", this::compareAndSetGetAndIncrement);
+    validateUnique("weakCompareAndSetGetAndIncrement", this::weakCompareAndSetGetAndIncrement);
+    validateUnique("weakCompareAndSetPlainGetAndIncrement", this::weakCompareAndSetPlainGetAndIncrement);
+    validateUnique("weakCompareAndSetAcquireGetAndIncrement", this::weakCompareAndSetAcquireGetAndIncrement);
+    validateUnique("weakCompareAndSetReleaseGetAndIncrement", this::weakCompareAndSetReleaseGetAndIncrement);
+    validateUnique("compareAndExchangeGetAndIncrement", this::compareAndExchangeGetAndIncrement);
+    validateUnique("compareAndExchangeAcquireGetAndIncrement", this::compareAndExchangeAcquireGetAndIncrement);
+    validateUnique("compareAndExchangeReleaseGetAndIncrement", this::compareAndExchangeReleaseGetAndIncrement);
+    validateUnique("getAndAddGetAndIncrement", this::getAndAddGetAndIncrement);
+  }
+
+  private static final void validateUnique(final String benchmarkName, final ToLongFunction<BenchmarkState> benchmark) {
+    final BenchmarkState state = new BenchmarkState();
+    assertUnique(benchmarkName, 4, 100_000, threadIdx -> () -> benchmark.applyAsLong(state));
+  }
+
+  @Benchmark
+  public final long plainGet(final BenchmarkState state) {
+    return (long)BenchmarkState.value.get(state);
+  }
+
+  @Benchmark
+  public final long opaqueGet(final BenchmarkState state) {
+    return (long)BenchmarkState.value.getOpaque(state);
+  }
+
+  @Benchmark
+  public final long acquireGet(final BenchmarkState state) {
+    return (long)BenchmarkState.value.getAcquire(state);
+  }
+
+  @Benchmark
+  public final long volatileGet(final BenchmarkState state) {
+    return (long)BenchmarkState.value.getVolatile(state);
+  }
+
+  @Benchmark
+  public final long plainGetAcquireFence(final BenchmarkState state) {
+    final long result = (long)BenchmarkState.value.get(state);
+    VarHandle.acquireFence();
+    return result;
+  }
+
+  @Benchmark
+  public final long plainGetFullFence(final BenchmarkState state) {
+    final long result = (long)BenchmarkState.value.get(state);
+    VarHandle.fullFence();
+    return result;
+  }
+
+  @Benchmark
+  public final void plainSet(final BenchmarkState state, final ThreadState threadState) {
+    BenchmarkState.value.set(state, threadState.nextValue());
+  }
+
+  @Benchmark
+  public final void opaqueSet(final BenchmarkState state, final ThreadState threadState) {
+    BenchmarkState.value.setOpaque(state, threadState.nextValue());
+  }
+
+  @Benchmark
+  public final void releaseSet(final BenchmarkState state, final ThreadState threadState) {
+    BenchmarkState.value.setRelease(state, threadState.nextValue());
+  }
+
+  @Benchmark
+  public final void volatileSet(final BenchmarkState state, final ThreadState threadState) {
+    BenchmarkState.value.setVolatile(state, threadState.nextValue());
+  }
+
+  @Benchmark
+  public final void releaseFencePlainSet(final BenchmarkState state, final ThreadState threadState) {
+    VarHandle.releaseFence();
+    BenchmarkState.value.set(state, threadState.nextValue());
+  }
+
+  /**
+   * A full fence after a plain write is what a volatile write is usually compiled to on x86.
+   */
+  @Benchmark
+  public final void plainSetFullFence(final BenchmarkState state, final ThreadState threadState) {
+    BenchmarkState.value.set(state, threadState.nextValue());
+    VarHandle.fullFence();
+  }
+
+  @Benchmark
+  public final long compareAndSetGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v;
+    do {
+      v = (long)value.getVolatile(state);
+    } while (!value.compareAndSet(state, v, v + 1L));
+    return v;
+  }
+
+  @Benchmark
+  public final long weakCompareAndSetGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v;
+    do {
+      v = (long)value.getVolatile(state);
+    } while (!value.weakCompareAndSet(state, v, v + 1L));
+    return v;
+  }
+
+  @Benchmark
+  public final long weakCompareAndSetPlainGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v;
+    do {
+      v = (long)value.get(state);
+    } while (!value.weakCompareAndSetPlain(state, v, v + 1L));
+    return v;
+  }
+
+  @Benchmark
+  public final long weakCompareAndSetAcquireGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v;
+    do {
+      v = (long)value.getAcquire(state);
+    } while (!value.weakCompareAndSetAcquire(state, v, v + 1L));
+    return v;
+  }
+
+  @Benchmark
+  public final long weakCompareAndSetReleaseGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v;
+    do {
+      v = (long)value.get(state);
+    } while (!value.weakCompareAndSetRelease(state, v, v + 1L));
+    return v;
+  }
+
+  /**
+   * Unlike a loop with {@link VarHandle#compareAndSet(Object...)}, does not need to reread the value after a failure
+   * because {@link VarHandle#compareAndExchange(Object...)} returns the witness value.
+   */
+  @Benchmark
+  public final long compareAndExchangeGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v = (long)value.getVolatile(state);
+    long witness;
+    while ((witness = (long)value.compareAndExchange(state, v, v + 1L)) != v) {
+      v = witness;
+    }
+    return v;
+  }
+
+  @Benchmark
+  public final long compareAndExchangeAcquireGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v = (long)value.getAcquire(state);
+    long witness;
+    while ((witness = (long)value.compareAndExchangeAcquire(state, v, v + 1L)) != v) {
+      v = witness;
+    }
+    return v;
+  }
+
+  @Benchmark
+  public final long compareAndExchangeReleaseGetAndIncrement(final BenchmarkState state) {
+    final VarHandle value = BenchmarkState.value;
+    long v = (long)value.get(state);
+    long witness;
+    while ((witness = (long)value.compareAndExchangeRelease(state, v, v + 1L)) != v) {
+      v = witness;
+    }
+    return v;
+  }
+
+  /**
+   * A baseline for the CAS loops.
+   */
+  @Benchmark
+  public final long getAndAddGetAndIncrement(final BenchmarkState state) {
+    return (long)BenchmarkState.value.getAndAdd(state, 1L);
+  }
+
+  @State(Scope.Benchmark)
+  public static class BenchmarkState {
+    private static final VarHandle value;
+
+    static {
+      try {
+        value = MethodHandles.lookup().findVarHandle(BenchmarkState.class, "forValue", long.class);
+      } catch (final NoSuchFieldException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private long forValue;
+
+    public BenchmarkState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setup() {
+      value.setVolatile(this, 0L);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private long value;
+
+    public ThreadState() {
+    }
+
+    @Setup(Level.Trial)
+    public final void setup(final ThreadParams threadParams) {
+      value = threadParams.getThreadIndex();
+    }
+
+    /**
+     * @return A value that differs from the previous one, so that writes cannot be eliminated as redundant.
+     */
+    private final long nextValue() {
+      return value++;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package stincmale.sandbox.benchmarks.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.ListStatistics;
+
+/**
+ * Adds forks to benchmarks with noisy results until results are precise enough or the time budget runs out.
+ * <p>
+ * A result is considered noisy if the half-width of the {@value #CONFIDENCE} confidence interval of the score
+ * relative to the score exceeds the {@linkplain #AdaptiveForks(double, Duration) noise threshold}.
+ * The confidence interval is calculated twice: the way JMH calculates the score error, i.e., treating all measurement iterations
+ * as samples, and treating per-fork scores as samples. The latter detects forks that disagree with each other,
+ * e.g., because of different JIT compilation decisions, which adding iterations to each fork does not fix, hence forks are added.
+ * <p>
+ * Additional forks are run with the same {@link Options} but only for the noisy benchmark,
+ * and their measurement iterations are merged into the primary result stored in the JMH JSON result file.
+ * Secondary results, e.g., produced by profilers, are not merged and describe only the original forks.
+ * Results in the {@link Mode#SampleTime} mode are not supported and are never considered noisy.
+ */
+public final class AdaptiveForks {
+  private static final double CONFIDENCE = 0.999;
+  private static final int DEFAULT_FORKS_PER_ROUND = 5;
+  private static final Gson gson = new GsonBuilder()
+      .disableHtmlEscaping()
+      .setPrettyPrinting()
+      .create();
+
+  private final double noiseThreshold;
+  private final Duration timeBudget;
+
+  /**
+   * @param noiseThreshold The maximal allowed half-width of the confidence interval relative to the score, e.g., 0.02 means 2%.
+   * @param timeBudget The maximal time that may be spent on running additional forks.
+   */
+  public AdaptiveForks(final double noiseThreshold, final Duration timeBudget) {
+    if (noiseThreshold <= 0) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be positive", "noiseThreshold", noiseThreshold));
+    }
+    if (timeBudget.isNegative()) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be negative", "timeBudget", timeBudget));
+    }
+    this.noiseThreshold = noiseThreshold;
+    this.timeBudget = timeBudget;
+  }
+
+  public final double noiseThreshold() {
+    return noiseThreshold;
+  }
+
+  public final Duration timeBudget() {
+    return timeBudget;
+  }
+
+  /**
+   * Runs additional forks for noisy results stored in the {@code resultFile} and rewrites the file with the merged results.
+   * Each round of additional forks is run for the noisiest result, so that the time budget is spent where it matters most.
+   *
+   * @param resultFile A JMH JSON result file of a run with the {@code options}.
+   * @param options Options of the run that produced the {@code resultFile}. The number of forks in each additional round
+   * is equal to {@link Options#getForkCount()}, but not less than 2.
+   */
+  public final void reduceNoise(final Path resultFile, final Options options) throws RunnerException {
+    final long startNanos = System.nanoTime();
+    final int forksPerRound = Math.max(2, options.getForkCount().orElse(DEFAULT_FORKS_PER_ROUND));
+    final JsonArray results = readJson(resultFile);
+    boolean merged = false;
+    long maxRoundNanos = 0;
+    while (true) {
+      JsonObject noisiestResult = null;
+      Noise maxNoise = null;
+      for (final JsonElement resultElement : results) {
+        final JsonObject result = resultElement.getAsJsonObject();
+        final Noise noise = noise(result);
+        if (noise.max() > noiseThreshold && (maxNoise == null || noise.max() > maxNoise.max())) {
+          noisiestResult = result;
+          maxNoise = noise;
+        }
+      }
+      if (noisiestResult == null) {
+        break;
+      }
+      final long remainingNanos = timeBudget.toNanos() - (System.nanoTime() - startNanos);
+      if (remainingNanos < maxRoundNanos || remainingNanos <= 0) {
+        System.out.printf("%n# sandbox: the time budget %s for additional forks is exhausted, noisy results remain:%n", timeBudget);
+        for (final JsonElement resultElement : results) {
+          final JsonObject result = resultElement.getAsJsonObject();
+          final Noise noise = noise(result);
+          if (noise.max() > noiseThreshold) {
+            System.out.printf("%s: %s%n", key(result), noise);
+          }
+        }
+        break;
+      }
+      System.out.printf("%n# sandbox: %s is noisy: %s, running %d more forks%n", key(noisiestResult), maxNoise, forksPerRound);
+      final long roundStartNanos = System.nanoTime();
+      merge(noisiestResult, runMoreForks(noisiestResult, options, forksPerRound, resultFile));
+      maxRoundNanos = Math.max(maxRoundNanos, System.nanoTime() - roundStartNanos);
+      merged = true;
+    }
+    if (merged) {
+      try (Writer writer = Files.newBufferedWriter(resultFile, StandardCharsets.UTF_8)) {
+        gson.toJson(results, writer);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      System.out.printf("%n# sandbox: results with additional forks are stored in %s%n", resultFile);
+    }
+  }
+
+  private static final Noise noise(final JsonObject result) {
+    final JsonObject primaryMetric = result.getAsJsonObject("primaryMetric");
+    final ListStatistics iterationScores = new ListStatistics();
+    final ListStatistics forkScores = new ListStatistics();
+    if (primaryMetric.has("rawData")) {
+      for (final JsonElement fork : primaryMetric.getAsJsonArray("rawData")) {
+        final ListStatistics forkIterationScores = new ListStatistics();
+        for (final JsonElement iterationScore : fork.getAsJsonArray()) {
+          iterationScores.addValue(iterationScore.getAsDouble());
+          forkIterationScores.addValue(iterationScore.getAsDouble());
+        }
+        if (forkIterationScores.getN() > 0) {
+          forkScores.addValue(forkIterationScores.getMean());
+        }
+      }
+    }
+    return new Noise(relativeError(iterationScores), relativeError(forkScores), forkScores.getN());
+  }
+
+  /**
+   * @return {@link Double#NaN} if there are too few samples, JMH does not calculate the error for less than three samples.
+   */
+  private static final double relativeError(final ListStatistics statistics) {
+    return Math.abs(statistics.getMeanErrorAt(CONFIDENCE) / statistics.getMean());
+  }
+
+  private static final String percent(final double share) {
+    return Double.isNaN(share) ? "unknown" : String.format("%.1f%%", share * 100);
+  }
+
+  private static final JsonObject runMoreForks(
+      final JsonObject result, final Options options, final int forks, final Path resultFile) throws RunnerException {
+    final Path moreForksResultFile = resultFile.resolveSibling(resultFile.getFileName() + ".more-forks.tmp");
+    final OptionsBuilder moreForksOptions = new OptionsBuilder();
+    moreForksOptions.parent(options)
+        //includes are merged with the includes of the parent options, so we exclude everything else instead
+        .exclude("^(?!" + Pattern.quote(result.get("benchmark").getAsString()) + "$)")
+        .mode(Mode.deepValueOf(result.get("mode").getAsString()))
+        .threads(result.get("threads").getAsInt())
+        .forks(forks)
+        .result(moreForksResultFile.toString())
+        .resultFormat(ResultFormatType.JSON);
+    if (result.has("params")) {
+      for (final Map.Entry<String, JsonElement> param : result.getAsJsonObject("params").entrySet()) {
+        moreForksOptions.param(param.getKey(), param.getValue().getAsString());
+      }
+    }
+    new Runner(moreForksOptions.build()).run();
+    final JsonArray moreForksResults = readJson(moreForksResultFile);
+    try {
+      Files.delete(moreForksResultFile);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (moreForksResults.size() != 1) {
+      throw new AssertionError(String.format("Expected a single result of %s but got %d", key(result), moreForksResults.size()));
+    }
+    return moreForksResults.get(0).getAsJsonObject();
+  }
+
+  /**
+   * Merges measurement iterations of the primary result of {@code moreForks} into the {@code result},
+   * and recalculates the score and its error the same way JMH does.
+   */
+  private static final void merge(final JsonObject result, final JsonObject moreForks) {
+    result.addProperty("forks", result.get("forks").getAsInt() + moreForks.get("forks").getAsInt());
+    final JsonObject primaryMetric = result.getAsJsonObject("primaryMetric");
+    final JsonArray rawData = primaryMetric.getAsJsonArray("rawData");
+    rawData.addAll(moreForks.getAsJsonObject("primaryMetric").getAsJsonArray("rawData"));
+    final List<Double> iterationScores = new ArrayList<>();
+    rawData.forEach(fork -> fork.getAsJsonArray().forEach(iterationScore -> iterationScores.add(iterationScore.getAsDouble())));
+    final ListStatistics statistics = new ListStatistics(iterationScores.stream()
+        .mapToDouble(Double::doubleValue)
+        .toArray());
+    primaryMetric.addProperty("score", statistics.getMean());
+    primaryMetric.add("scoreError", number(statistics.getMeanErrorAt(CONFIDENCE)));
+    final JsonArray scoreConfidence = new JsonArray();
+    for (final double bound : statistics.getConfidenceIntervalAt(CONFIDENCE)) {
+      scoreConfidence.add(number(bound));
+    }
+    primaryMetric.add("scoreConfidence", scoreConfidence);
+    if (primaryMetric.has("scorePercentiles")) {
+      final JsonObject scorePercentiles = new JsonObject();
+      for (final String percentile : primaryMetric.getAsJsonObject("scorePercentiles").keySet()) {
+        scorePercentiles.add(percentile, number(statistics.getPercentile(Double.parseDouble(percentile))));
+      }
+      primaryMetric.add("scorePercentiles", scorePercentiles);
+    }
+  }
+
+  /**
+   * JMH writes {@link Double#NaN} as a string, and so do we.
+   */
+  private static final JsonPrimitive number(final double value) {
+    return Double.isNaN(value) ? new JsonPrimitive("NaN") : new JsonPrimitive(value);
+  }
+
+  private static final String key(final JsonObject result) {
+    return result.get("benchmark").getAsString()
+        + (result.has("params") ? result.getAsJsonObject("params").toString() : "")
+        + " " + result.get("mode").getAsString()
+        + " threads=" + result.get("threads").getAsInt();
+  }
+
+  private static final JsonArray readJson(final Path jsonFile) {
+    try (Reader reader = Files.newBufferedReader(jsonFile, StandardCharsets.UTF_8)) {
+      return JsonParser.parseReader(reader).getAsJsonArray();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final class Noise {
+    private final double iterationsError;
+    private final double forksError;
+    private final long forks;
+
+    private Noise(final double iterationsError, final double forksError, final long forks) {
+      this.iterationsError = iterationsError;
+      this.forksError = forksError;
+      this.forks = forks;
+    }
+
+    /**
+     * @return The maximum of the known relative errors, or 0 if neither is known.
+     */
+    private final double max() {
+      return Math.max(Double.isNaN(iterationsError) ? 0 : iterationsError, Double.isNaN(forksError) ? 0 : forksError);
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("the error is %s of the score, forks disagree by %s (%d forks)", percent(iterationsError), percent(forksError), forks);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.commons.math3.stat.StatUtils;
+import org.apache.commons.math3.stat.inference.TTest;
+
+/**
+ * Compares {@linkplain StoredResult results} of a benchmark run with results of a baseline run.
+ * A benchmark is considered regressed iff its score got worse by more than the {@linkplain #BaselineComparator(double, double) threshold}
+ * and the difference is statistically significant according to the
+ * <a href="https://en.wikipedia.org/wiki/Welch%27s_t-test">Welch's t-test</a> applied to the per-fork scores.
+ * Forks are used as samples instead of iterations because iterations within a fork are not independent:
+ * they share the JIT compilation decisions, heap layout, etc.
+ */
+public final class BaselineComparator {
+  private final double threshold;
+  private final double significanceLevel;
+
+  /**
+   * @param threshold The minimal relative change of a score that may be considered a regression, e.g., 0.05 means 5%.
+   * @param significanceLevel The significance level (also known as alpha) used to reject the null hypothesis
+   * that the baseline and the current per-fork scores have equal means, e.g., 0.01.
+   */
+  public BaselineComparator(final double threshold, final double significanceLevel) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be negative", "threshold", threshold));
+    }
+    if (significanceLevel <= 0 || significanceLevel >= 1) {
+      throw new IllegalArgumentException(String.format(
+          "The argument %s=%s must be in (0, 1)", "significanceLevel", significanceLevel));
+    }
+    this.threshold = threshold;
+    this.significanceLevel = significanceLevel;
+  }
+
+  public final double threshold() {
+    return threshold;
+  }
+
+  public final double significanceLevel() {
+    return significanceLevel;
+  }
+
+  /**
+   * @return {@link Comparison}s for all current results that have a matching baseline result.
+   */
+  public final List<Comparison> compare(final List<StoredResult> baseline, final List<StoredResult> current) {
+    final Map<String, StoredResult> baselineByKey = StoredResult.byKey(baseline);
+    final List<Comparison> result = new ArrayList<>();
+    for (final StoredResult currentResult : StoredResult.byKey(current).values()) {
+      final StoredResult baselineResult = baselineByKey.get(currentResult.key());
+      if (baselineResult != null && baselineResult.scoreUnit().equals(currentResult.scoreUnit())) {
+        result.add(compare(baselineResult, currentResult));
+      }
+    }
+    return result;
+  }
+
+  private final Comparison compare(final StoredResult baseline, final StoredResult current) {
+    final double[] baselineForkScores = baseline.forkScores();
+    final double[] currentForkScores = current.forkScores();
+    final double baselineScore = StatUtils.mean(baselineForkScores);
+    final double currentScore = StatUtils.mean(currentForkScores);
+    final boolean changeDefined = baselineScore != 0 && Double.isFinite(baselineScore) && Double.isFinite(currentScore);
+    final double change = changeDefined ? (currentScore - baselineScore) / baselineScore : Double.NaN;
+    final double worsening = current.higherIsBetter() ? -change : change;
+    final Optional<Double> pValue = changeDefined ? pValue(baselineForkScores, currentForkScores) : Optional.empty();
+    final Verdict verdict;
+    if (pValue.isEmpty()) {
+      verdict = Verdict.INSUFFICIENT_DATA;
+    } else if (pValue.get() >= significanceLevel) {
+      verdict = Verdict.NO_SIGNIFICANT_CHANGE;
+    } else if (worsening > threshold) {
+      verdict = Verdict.REGRESSION;
+    } else if (-worsening > threshold) {
+      verdict = Verdict.IMPROVEMENT;
+    } else {
+      verdict = Verdict.NO_SIGNIFICANT_CHANGE;
+    }
+    return new Comparison(baseline, current, baselineScore, currentScore, change, pValue.orElse(Double.NaN), verdict);
+  }
+
+  private static final Optional<Double> pValue(final double[] baselineForkScores, final double[] currentForkScores) {
+    final Optional<Double> result;
+    if (baselineForkScores.length < 2 || currentForkScores.length < 2) {
+      result = Optional.empty();
+    } else if (StatUtils.variance(baselineForkScores) == 0 && StatUtils.variance(currentForkScores) == 0) {//the t-test is undefined
+      result = Optional.of(StatUtils.mean(baselineForkScores) == StatUtils.mean(currentForkScores) ? 1d : 0d);
+    } else {
+      result = Optional.of(new TTest().tTest(baselineForkScores, currentForkScores));
+    }
+    return result;
+  }
+
+  public enum Verdict {
+    REGRESSION,
+    IMPROVEMENT,
+    NO_SIGNIFICANT_CHANGE,
+    /**
+     * There are less than two forks in either the baseline or the current result, so the significance test is not applicable,
+     * or the relative change of the score is undefined because the baseline score is 0 or either score is not finite.
+     */
+    INSUFFICIENT_DATA
+  }
+
+  public static final class Comparison {
+    private final StoredResult baseline;
+    private final StoredResult current;
+    private final double baselineScore;
+    private final double currentScore;
+    private final double change;
+    private final double pValue;
+    private final Verdict verdict;
+
+    private Comparison(
+        final StoredResult baseline,
+        final StoredResult current,
+        final double baselineScore,
+        final double currentScore,
+        final double change,
+        final double pValue,
+        final Verdict verdict) {
+      this.baseline = baseline;
+      this.current = current;
+      this.baselineScore = baselineScore;
+      this.currentScore = currentScore;
+      this.change = change;
+      this.pValue = pValue;
+      this.verdict = verdict;
+    }
+
+    public final StoredResult baseline() {
+      return baseline;
+    }
+
+    public final StoredResult current() {
+      return current;
+    }
+
+    /**
+     * @return The mean of the baseline per-fork scores.
+     */
+    public final double baselineScore() {
+      return baselineScore;
+    }
+
+    /**
+     * @return The mean of the current per-fork scores.
+     */
+    public final double currentScore() {
+      return currentScore;
+    }
+
+    /**
+     * @return The relative change of the score, e.g., -0.1 means that the score decreased by 10%.
+     * {@link Double#NaN} if the change is undefined, see {@link Verdict#INSUFFICIENT_DATA}.
+     */
+    public final double change() {
+      return change;
+    }
+
+    /**
+     * @return {@link Double#NaN} if the {@link #verdict()} is {@link Verdict#INSUFFICIENT_DATA}.
+     */
+    public final double pValue() {
+      return pValue;
+    }
+
+    public final Verdict verdict() {
+      return verdict;
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("%s  %.3f -> %.3f %s  %+.1f%%  p=%.4f  %s",
+          current.key(), baselineScore, currentScore, current.scoreUnit(), change * 100, pValue, verdict);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Comparison;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Verdict;
+
+@TestInstance(Lifecycle.PER_METHOD)
+final class BaselineComparatorTest {
+  private static final BaselineComparator comparator = new BaselineComparator(0.05, 0.01);
+
+  @TempDir
+  Path dir;
+
+  private BaselineComparatorTest() {
+  }
+
+  @Test
+  final void regression() {
+    assertEquals(Verdict.REGRESSION, compare("thrpt", new double[] {100, 101, 99, 100}, new double[] {80, 81, 79, 80}).verdict());
+    assertEquals(Verdict.REGRESSION, compare("avgt", new double[] {100, 101, 99, 100}, new double[] {120, 121, 119, 120}).verdict());
+  }
+
+  @Test
+  final void improvement() {
+    assertEquals(Verdict.IMPROVEMENT, compare("thrpt", new double[] {100, 101, 99, 100}, new double[] {120, 121, 119, 120}).verdict());
+    assertEquals(Verdict.IMPROVEMENT, compare("avgt", new double[] {100, 101, 99, 100}, new double[] {80, 81, 79, 80}).verdict());
+  }
+
+  @Test
+  final void noSignificantChange() {
+    assertEquals(Verdict.NO_SIGNIFICANT_CHANGE,
+        compare("thrpt", new double[] {100, 101, 99, 100}, new double[] {100, 99, 101, 100}).verdict());
+    //statistically significant, but smaller than the threshold
+    assertEquals(Verdict.NO_SIGNIFICANT_CHANGE,
+        compare("thrpt", new double[] {100, 100.1, 99.9, 100}, new double[] {98, 98.1, 97.9, 98}).verdict());
+  }
+
+  @Test
+  final void insufficientData() {
+    final Comparison comparison = compare("thrpt", new double[] {100}, new double[] {50, 51, 49});
+    assertEquals(Verdict.INSUFFICIENT_DATA, comparison.verdict());
+    assertEquals(Double.NaN, comparison.pValue());
+  }
+
+  @Test
+  final void zeroBaselineScore() {
+    final Comparison comparison = compare("avgt", new double[] {0, 0, 0}, new double[] {1, 1.1, 0.9});
+    assertEquals(Verdict.INSUFFICIENT_DATA, comparison.verdict());
+    assertEquals(Double.NaN, comparison.change());
+  }
+
+  private final Comparison compare(final String mode, final double[] baselineForkScores, final double[] currentForkScores) {
+    final List<Comparison> comparisons = comparator.compare(
+        StoredResult.read(write("baseline.json", mode, baselineForkScores)), StoredResult.read(write("current.json", mode, currentForkScores)));
+    assertEquals(1, comparisons.size());
+    return comparisons.get(0);
+  }
+
+  /**
+   * Writes a result in the JMH JSON format with a single measurement iteration per fork.
+   */
+  private final Path write(final String fileName, final String mode, final double[] forkScores) {
+    final Path result = dir.resolve(fileName);
+    final String rawData = Arrays.stream(forkScores)
+        .mapToObj(score -> String.format(Locale.ROOT, "[%s]", score))
+        .collect(Collectors.joining(", ", "[", "]"));
+    try {
+      Files.writeString(result, String.format(Locale.ROOT, "[{\"benchmark\": \"Benchmarks.benchmark\", \"mode\": \"%s\", \"threads\": 1, "
+              + "\"primaryMetric\": {\"score\": %s, \"scoreError\": \"NaN\", \"scoreUnit\": \"ops/us\", \"rawData\": %s}}]",
+          mode, Arrays.stream(forkScores).average().orElse(Double.NaN), rawData), StandardCharsets.UTF_8);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+}
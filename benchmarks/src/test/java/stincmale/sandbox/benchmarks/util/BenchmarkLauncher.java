@@ -0,0 +1,264 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.profile.Profiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.newOptionsBuilder;
+
+/**
+ * The entry point of the executable benchmarks JAR, which allows running benchmarks without Maven and JUnit.
+ * Benchmarks are run with the {@linkplain JmhOptions#newOptionsBuilder(java.util.function.Consumer) sandbox options}
+ * via {@link JmhRunner}, so results are stored and checked against baselines the same way as when benchmarks are run as tests,
+ * and {@code sandbox.*} system properties are honored. Run with {@code -h} to see the usage.
+ */
+public final class BenchmarkLauncher {
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: java [-Dsandbox.<property>=<value>...] -jar sandbox-benchmarks-<version>-benchmarks.jar [options] [benchmark regexp...]",
+      "Runs benchmarks whose fully qualified names, e.g., stincmale.sandbox.benchmarks.ListPerformanceTest.iterate,",
+      "match any of the regular expressions, or all benchmarks if none is specified.",
+      "Options:",
+      "  -l                    List the matching benchmarks instead of running them.",
+      "  -p <name>=<v1,v2...>  Benchmark parameter values. May be repeated.",
+      "  -t <n1,n2...|sweep>   Numbers of threads; each number is run separately. sweep runs 1, 2, 4, ..., 2 * (available processors).",
+      "  -f <n>                Number of forks.",
+      "  -wi <n>               Number of warmup iterations.",
+      "  -i <n>                Number of measurement iterations.",
+      "  -prof <name[:opts]>   Profiler: a JMH profiler, e.g., gc, stack, perfnorm, or jfr, flamegraph. May be repeated.",
+      "  -rf <format>          Additional result format: text, csv, scsv, json, latex. JSON results are always stored.",
+      "  -id <id>              Identifies the results in sandbox.resultsDir and sandbox.baselineDir. Default: benchmarks.",
+      "  -h                    Print this message.");
+  private static final Map<String, Class<? extends Profiler>> sandboxProfilers = Map.of(
+      "jfr", JfrProfiler.class,
+      "flamegraph", FlameGraphProfiler.class);
+
+  private BenchmarkLauncher() {
+  }
+
+  public static final void main(final String... args) throws RunnerException {
+    final Arguments arguments;
+    try {
+      arguments = Arguments.parse(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+      return;
+    }
+    if (arguments.help) {
+      System.out.println(USAGE);
+    } else if (arguments.list) {
+      new Runner(arguments.options(1)).list();
+    } else if (arguments.threadSweep) {
+      ThreadSweep.run(arguments.id, arguments.options(1));
+    } else if (arguments.numbersOfThreads.size() == 1) {
+      final int numberOfThreads = arguments.numbersOfThreads.get(0);
+      writeOut(arguments, arguments.id, JmhRunner.run(arguments.id, arguments.options(numberOfThreads)));
+    } else {
+      final Map<Integer, String> ids = new TreeMap<>();
+      for (final int numberOfThreads : arguments.numbersOfThreads) {
+        final String threadsId = arguments.id + "-threads" + numberOfThreads;
+        writeOut(arguments, threadsId, JmhRunner.run(threadsId, arguments.options(numberOfThreads)));
+        ids.put(numberOfThreads, threadsId);
+      }
+      ThreadSweep.print(arguments.id, ids);
+    }
+  }
+
+  private static final void writeOut(final Arguments arguments, final String id, final Collection<RunResult> results) {
+    for (final ResultFormatType resultFormat : arguments.resultFormats) {
+      final Path resultFile = JmhRunner.resultsDir().resolve(id + "." + resultFormat.name().toLowerCase(Locale.ROOT));
+      try (PrintStream out = new PrintStream(resultFile.toFile(), StandardCharsets.UTF_8)) {
+        ResultFormatFactory.getInstance(resultFormat, out).writeOut(results);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      System.out.printf("%n# sandbox: results are written to %s%n", resultFile);
+    }
+  }
+
+  private static final class Arguments {
+    private final List<String> includes;
+    private final Map<String, String[]> params;
+    private final List<Integer> numbersOfThreads;
+    private final List<String> profilers;
+    private final List<ResultFormatType> resultFormats;
+    private boolean threadSweep;
+    @Nullable
+    private Integer forks;
+    @Nullable
+    private Integer warmupIterations;
+    @Nullable
+    private Integer measurementIterations;
+    private String id;
+    private boolean list;
+    private boolean help;
+
+    private Arguments() {
+      includes = new ArrayList<>();
+      params = new TreeMap<>();
+      numbersOfThreads = new ArrayList<>();
+      profilers = new ArrayList<>();
+      resultFormats = new ArrayList<>();
+      id = "benchmarks";
+    }
+
+    private static final Arguments parse(final String... args) {
+      final Arguments result = new Arguments();
+      for (int i = 0; i < args.length; i++) {
+        final String arg = args[i];
+        switch (arg) {
+          case "-h":
+          case "--help": {
+            result.help = true;
+            break;
+          }
+          case "-l": {
+            result.list = true;
+            break;
+          }
+          case "-p": {
+            final String param = value(args, ++i, arg);
+            final int separatorIdx = param.indexOf('=');
+            if (separatorIdx <= 0) {
+              throw new IllegalArgumentException(String.format("The value %s of %s must be <name>=<v1,v2...>", param, arg));
+            }
+            result.params.put(param.substring(0, separatorIdx), param.substring(separatorIdx + 1).split(","));
+            break;
+          }
+          case "-t": {
+            final String threads = value(args, ++i, arg);
+            if ("sweep".equals(threads)) {
+              result.threadSweep = true;
+            } else {
+              for (final String numberOfThreads : threads.split(",")) {
+                result.numbersOfThreads.add(positiveInt(numberOfThreads, arg));
+              }
+            }
+            break;
+          }
+          case "-f": {
+            result.forks = positiveInt(value(args, ++i, arg), arg);
+            break;
+          }
+          case "-wi": {
+            result.warmupIterations = nonNegativeInt(value(args, ++i, arg), arg);
+            break;
+          }
+          case "-i": {
+            result.measurementIterations = positiveInt(value(args, ++i, arg), arg);
+            break;
+          }
+          case "-prof": {
+            result.profilers.add(value(args, ++i, arg));
+            break;
+          }
+          case "-rf": {
+            final String resultFormat = value(args, ++i, arg);
+            try {
+              result.resultFormats.add(ResultFormatType.valueOf(resultFormat.toUpperCase(Locale.ROOT)));
+            } catch (final IllegalArgumentException e) {
+              throw new IllegalArgumentException(String.format("Unknown result format %s, the supported formats are %s",
+                  resultFormat, Arrays.toString(ResultFormatType.values())), e);
+            }
+            break;
+          }
+          case "-id": {
+            result.id = value(args, ++i, arg);
+            break;
+          }
+          default: {
+            if (arg.startsWith("-")) {
+              throw new IllegalArgumentException(String.format("Unknown option %s", arg));
+            }
+            result.includes.add(arg);
+          }
+        }
+      }
+      if (result.threadSweep && !result.numbersOfThreads.isEmpty()) {
+        throw new IllegalArgumentException("-t sweep must not be combined with numbers of threads");
+      }
+      if (result.numbersOfThreads.isEmpty()) {
+        result.numbersOfThreads.add(1);
+      }
+      return result;
+    }
+
+    private final Options options(final int numberOfThreads) {
+      final OptionsBuilder result = newOptionsBuilder(opts -> {
+        if (forks != null) {
+          opts.forks(forks);
+        }
+        if (warmupIterations != null) {
+          opts.warmupIterations(warmupIterations);
+        }
+        if (measurementIterations != null) {
+          opts.measurementIterations(measurementIterations);
+        }
+      });
+      result.threads(numberOfThreads);
+      if (includes.isEmpty()) {
+        result.include(".*");
+      } else {
+        includes.forEach(result::include);
+      }
+      params.forEach(result::param);
+      for (final String profiler : profilers) {
+        final int separatorIdx = profiler.indexOf(':');
+        final String name = separatorIdx < 0 ? profiler : profiler.substring(0, separatorIdx);
+        final String profilerOptions = separatorIdx < 0 ? "" : profiler.substring(separatorIdx + 1);
+        final Class<? extends Profiler> sandboxProfiler = sandboxProfilers.get(name);
+        if (sandboxProfiler == null) {
+          result.addProfiler(name, profilerOptions);
+        } else {
+          result.addProfiler(sandboxProfiler, profilerOptions);
+        }
+      }
+      return result.build();
+    }
+
+    private static final String value(final String[] args, final int idx, final String option) {
+      if (idx >= args.length) {
+        throw new IllegalArgumentException(String.format("The option %s requires a value", option));
+      }
+      return args[idx];
+    }
+
+    private static final int positiveInt(final String value, final String option) {
+      final int result = nonNegativeInt(value, option);
+      if (result == 0) {
+        throw new IllegalArgumentException(String.format("The value %s of %s must be positive", value, option));
+      }
+      return result;
+    }
+
+    private static final int nonNegativeInt(final String value, final String option) {
+      final int result;
+      try {
+        result = Integer.parseInt(value.trim());
+      } catch (final NumberFormatException e) {
+        throw new IllegalArgumentException(String.format("The value %s of %s must be an integer", value, option), e);
+      }
+      if (result < 0) {
+        throw new IllegalArgumentException(String.format("The value %s of %s must not be negative", value, option));
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs JVMs and threads pinned to sets of CPUs by using the Linux
+ * <a href="https://man7.org/linux/man-pages/man1/taskset.1.html">{@code taskset}</a>, which calls {@code sched_setaffinity}.
+ * The CPU affinity of a process is inherited by all its threads, including JIT compiler and GC threads,
+ * while the affinity of a thread set via {@link #pinCurrentThread(int)} affects only that thread.
+ * <p>
+ * {@link ThreadPlacement} places benchmark threads according to the CPU topology described by
+ * {@code /sys/devices/system/cpu/cpu<n>/topology}, e.g., on SMT siblings that share L1 and L2 caches,
+ * or on different sockets that share nothing but the interconnect.
+ */
+public final class CpuAffinity {
+  private CpuAffinity() {
+  }
+
+  /**
+   * @return {@code true} iff {@code taskset} can be used.
+   */
+  public static final boolean isSupported() {
+    return TasksetSupport.supported;
+  }
+
+  /**
+   * @return Logical CPUs that the current process is allowed to run on, e.g., {@code [0, 1, 2, 3]},
+   * as specified by {@code Cpus_allowed_list} in {@code /proc/self/status}, or {@code [0, ..., (available processors - 1)]}
+   * if it is not available.
+   */
+  public static final List<Integer> allowedCpus() {
+    final Path statusFile = Paths.get("/proc/self/status");
+    if (Files.isReadable(statusFile)) {
+      try {
+        final Optional<String> cpusAllowedList = Files.readAllLines(statusFile, StandardCharsets.UTF_8)
+            .stream()
+            .filter(line -> line.startsWith("Cpus_allowed_list:"))
+            .map(line -> line.substring("Cpus_allowed_list:".length()).trim())
+            .findAny();
+        if (cpusAllowedList.isPresent()) {
+          return parseCpuList(cpusAllowedList.get());
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return IntStream.range(0, Runtime.getRuntime().availableProcessors())
+        .boxed()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @param cpuList A CPU list in the format used by Linux, e.g., {@code "0-3,8,10-11"}.
+   */
+  public static final List<Integer> parseCpuList(final String cpuList) {
+    final List<Integer> result = new ArrayList<>();
+    for (final String range : cpuList.trim().split(",")) {
+      if (range.isBlank()) {
+        continue;
+      }
+      final int separatorIdx = range.indexOf('-');
+      if (separatorIdx < 0) {
+        result.add(Integer.parseInt(range.trim()));
+      } else {
+        final int first = Integer.parseInt(range.substring(0, separatorIdx).trim());
+        final int last = Integer.parseInt(range.substring(separatorIdx + 1).trim());
+        IntStream.rangeClosed(first, last).forEach(result::add);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return Disjoint sets of {@code cpusPerSet} {@linkplain #allowedCpus() allowed CPUs} such that sets do not share physical cores,
+   * e.g., {@code [[0, 4], [1, 5]]} if the CPUs 0 and 4 are SMT siblings, as are the CPUs 1 and 5.
+   * A set consists of CPUs of whole cores of a single socket, the CPUs of the last core of a set that exceed {@code cpusPerSet} are left unused.
+   */
+  public static final List<List<Integer>> cpuSets(final int cpusPerSet) {
+    if (cpusPerSet < 1) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be positive", "cpusPerSet", cpusPerSet));
+    }
+    final Map<Integer, Map<String, List<Integer>>> coresBySocket = new LinkedHashMap<>();
+    for (final Cpu cpu : Cpu.allowed()) {
+      coresBySocket.computeIfAbsent(cpu.socket, socket -> new LinkedHashMap<>())
+          .computeIfAbsent(cpu.coreKey(), core -> new ArrayList<>())
+          .add(cpu.id);
+    }
+    final List<List<Integer>> result = new ArrayList<>();
+    for (final Map<String, List<Integer>> cores : coresBySocket.values()) {
+      final List<Integer> cpuSet = new ArrayList<>();
+      for (final List<Integer> siblings : cores.values()) {
+        cpuSet.addAll(siblings);
+        if (cpuSet.size() >= cpusPerSet) {
+          result.add(List.copyOf(cpuSet.subList(0, cpusPerSet)));
+          cpuSet.clear();
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return A CPU list in the format accepted by {@code taskset -c}, e.g., {@code "0,1,8"}.
+   */
+  public static final String cpuList(final List<Integer> cpus) {
+    return cpus.stream()
+        .map(String::valueOf)
+        .collect(Collectors.joining(","));
+  }
+
+  /**
+   * Creates an executable script that runs the {@code jvm} pinned to the {@code cpus}.
+   * The script may be used instead of a JVM, e.g., via {@link org.openjdk.jmh.runner.options.OptionsBuilder#jvm(String)}.
+   *
+   * @param jvm A path to the {@code java} executable.
+   * @param dir A directory where the script is created.
+   * @return A path to the script.
+   */
+  public static final Path pinnedJvm(final String jvm, final List<Integer> cpus, final Path dir) {
+    if (cpus.isEmpty()) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be empty", "cpus", cpus));
+    }
+    final Path script = dir.resolve("java-cpus" + cpus.stream().map(String::valueOf).collect(Collectors.joining("_")) + ".sh")
+        .toAbsolutePath();
+    try {
+      Files.createDirectories(dir);
+      try (Writer writer = Files.newBufferedWriter(script, StandardCharsets.UTF_8)) {
+        writer.write(String.format("#!/bin/sh%nexec taskset -c %s '%s' \"$@\"%n", cpuList(cpus), jvm.replace("'", "'\\''")));
+      }
+      Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return script;
+  }
+
+  /**
+   * Pins the current thread to the {@code cpu}.
+   */
+  public static final void pinCurrentThread(final int cpu) {
+    final String tid;
+    try {
+      //the link target is <pid>/task/<tid>
+      tid = Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    try {
+      final int exitCode = new ProcessBuilder("taskset", "-c", "-p", String.valueOf(cpu), tid)
+          .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start()
+          .waitFor();
+      if (exitCode != 0) {
+        throw new RuntimeException(String.format("Failed to pin the thread %s to the CPU %d, taskset exit code %d", tid, cpu, exitCode));
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Pins the current thread according to the {@link ThreadPlacement} specified via the {@code sandbox.threadPlacement} system property,
+   * does nothing if it is not specified.
+   * Benchmarks call this method from a {@link org.openjdk.jmh.annotations.Scope#Thread} state set up at
+   * {@link org.openjdk.jmh.annotations.Level#Trial}, which is run by the thread that runs the benchmark method.
+   *
+   * @param threadIdx See {@link org.openjdk.jmh.infra.ThreadParams#getThreadIndex()}.
+   * @param numberOfThreads See {@link org.openjdk.jmh.infra.ThreadParams#getThreadCount()}.
+   */
+  public static final void placeCurrentThread(final int threadIdx, final int numberOfThreads) {
+    final ThreadPlacement placement = ThreadPlacement.of(System.getProperty("sandbox.threadPlacement", ThreadPlacement.NONE.toString()));
+    if (placement != ThreadPlacement.NONE) {
+      final List<Integer> cpus = placement.cpus(numberOfThreads)
+          .orElseThrow(() -> new RuntimeException(String.format(
+              "The thread placement %s of %d threads is impossible on the allowed CPUs %s", placement, numberOfThreads, allowedCpus())));
+      pinCurrentThread(cpus.get(threadIdx % cpus.size()));
+    }
+  }
+
+  /**
+   * Describes on which CPUs threads run relative to each other.
+   */
+  public enum ThreadPlacement {
+    /**
+     * Threads are not pinned.
+     */
+    NONE("none"),
+    /**
+     * All threads run on the same logical CPU and are time-sliced, so they never access shared data concurrently.
+     */
+    SAME_CPU("sameCpu"),
+    /**
+     * Threads run on the logical CPUs of a single physical core, a.k.a. SMT siblings or hyper-threads,
+     * which share the L1 and L2 caches. Requires a core with at least two logical CPUs and at least as many logical CPUs as there are threads.
+     */
+    SMT_SIBLINGS("smtSiblings"),
+    /**
+     * Threads run on different physical cores of a single socket, which share only the last level cache.
+     * Requires at least as many cores in a socket as there are threads.
+     */
+    DIFFERENT_CORES("differentCores"),
+    /**
+     * Threads run on different physical cores alternating between sockets, so that adjacent threads
+     * communicate via the interconnect between sockets. Requires at least two sockets and at least as many cores as there are threads.
+     */
+    DIFFERENT_SOCKETS("differentSockets");
+
+    private final String label;
+
+    ThreadPlacement(final String label) {
+      this.label = label;
+    }
+
+    /**
+     * @param label See {@link #toString()}.
+     */
+    public static final ThreadPlacement of(final String label) {
+      for (final ThreadPlacement placement : values()) {
+        if (placement.label.equals(label)) {
+          return placement;
+        }
+      }
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be one of %s",
+          "label", label, Arrays.toString(values())));
+    }
+
+    /**
+     * @return {@linkplain #allowedCpus() Allowed CPUs} on which the threads are to be run in the order of thread indices,
+     * the thread with the index {@code i} is run on the CPU with the index {@code i % size()}.
+     * An empty list if threads are not pinned, or {@link Optional#empty()} if the placement is impossible.
+     */
+    public final Optional<List<Integer>> cpus(final int numberOfThreads) {
+      final List<Cpu> cpus = Cpu.allowed();
+      final Optional<List<Integer>> result;
+      switch (this) {
+        case NONE: {
+          result = Optional.of(List.of());
+          break;
+        }
+        case SAME_CPU: {
+          result = Optional.of(List.of(cpus.get(0).id));
+          break;
+        }
+        case SMT_SIBLINGS: {
+          result = cpus.stream()
+              .collect(Collectors.groupingBy(Cpu::coreKey, LinkedHashMap::new, Collectors.mapping(cpu -> cpu.id, Collectors.toList())))
+              .values()
+              .stream()
+              .filter(siblings -> siblings.size() > 1 && siblings.size() >= numberOfThreads)
+              .findFirst()
+              .map(siblings -> siblings.subList(0, numberOfThreads));
+          break;
+        }
+        case DIFFERENT_CORES: {
+          result = firstCpuOfEachCore(cpus).values()
+              .stream()
+              .max(Comparator.comparingInt(List::size))
+              .filter(socketCpus -> socketCpus.size() >= numberOfThreads)
+              .map(socketCpus -> socketCpus.subList(0, numberOfThreads));
+          break;
+        }
+        case DIFFERENT_SOCKETS: {
+          final List<List<Integer>> socketsCpus = new ArrayList<>(firstCpuOfEachCore(cpus).values());
+          final List<Integer> interleavedCpus = new ArrayList<>();
+          for (int i = 0; interleavedCpus.size() < numberOfThreads && i < cpus.size(); i++) {
+            for (final List<Integer> socketCpus : socketsCpus) {
+              if (i < socketCpus.size() && interleavedCpus.size() < numberOfThreads) {
+                interleavedCpus.add(socketCpus.get(i));
+              }
+            }
+          }
+          result = socketsCpus.size() > 1 && interleavedCpus.size() == numberOfThreads
+              ? Optional.of(interleavedCpus)
+              : Optional.empty();
+          break;
+        }
+        default: {
+          throw new AssertionError(this);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return The value of the {@code sandbox.threadPlacement} system property, e.g., {@code "smtSiblings"}.
+     */
+    @Override
+    public final String toString() {
+      return label;
+    }
+
+    /**
+     * @return The first allowed CPU of each core grouped by socket.
+     */
+    private static final Map<Integer, List<Integer>> firstCpuOfEachCore(final List<Cpu> cpus) {
+      final Map<Integer, List<Integer>> result = new LinkedHashMap<>();
+      final Set<String> cores = new HashSet<>();
+      for (final Cpu cpu : cpus) {
+        if (cores.add(cpu.coreKey())) {
+          result.computeIfAbsent(cpu.socket, socket -> new ArrayList<>()).add(cpu.id);
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class Cpu {
+    private final int id;
+    private final int core;
+    private final int socket;
+
+    private Cpu(final int id, final int core, final int socket) {
+      this.id = id;
+      this.core = core;
+      this.socket = socket;
+    }
+
+    /**
+     * @return {@linkplain #allowedCpus() Allowed CPUs} with their topology.
+     * A CPU without a known topology is treated as a separate core of the socket 0.
+     */
+    private static final List<Cpu> allowed() {
+      return allowedCpus().stream()
+          .map(id -> {
+            final Path topologyDir = Paths.get("/sys/devices/system/cpu", "cpu" + id, "topology");
+            return new Cpu(id, readInt(topologyDir.resolve("core_id")).orElse(id),
+                readInt(topologyDir.resolve("physical_package_id")).orElse(0));
+          })
+          .collect(Collectors.toList());
+    }
+
+    private static final Optional<Integer> readInt(final Path file) {
+      if (!Files.isReadable(file)) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.of(Integer.parseInt(Files.readString(file, StandardCharsets.UTF_8).trim()));
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * @return Identifies a physical core, core ids are unique only within a socket.
+     */
+    private final String coreKey() {
+      return socket + ":" + core;
+    }
+  }
+
+  private static final class TasksetSupport {
+    private static final boolean supported;
+
+    static {
+      boolean tasksetSupported;
+      try {
+        tasksetSupported = new ProcessBuilder("taskset", "-c", "-p", String.valueOf(ProcessHandle.current().pid()))
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start()
+            .waitFor() == 0;
+      } catch (final IOException e) {
+        tasksetSupported = false;
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      if (!tasksetSupported) {
+        System.err.printf("# sandbox: taskset is not available, CPU affinity is not supported%n");
+      }
+      supported = tasksetSupported;
+    }
+
+    private TasksetSupport() {
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package stincmale.sandbox.benchmarks.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.runner.options.Options;
+
+/**
+ * Describes the environment in which benchmarks are run: hardware, OS, JDK, garbage collector, heap and other JVM flags of forks.
+ * {@link JmhRunner} writes it next to the results of each run, see {@link JmhRunner#environmentFile(Path)}.
+ * <p>
+ * The garbage collector and heap flags are the ones chosen by the JVM of forks for the {@linkplain #jvmArgs(Options) JVM arguments}
+ * specified via {@link Options}, which is why they are obtained by running {@code java <JVM arguments> -XX:+PrintFlagsFinal -version}.
+ * For the same reason, the JDK vendor and version are obtained by running {@code java <JVM arguments> -XshowSettings:properties -version},
+ * as the JVM of forks may differ from the one that runs JMH.
+ * Note that benchmarks may additionally specify JVM arguments via {@link org.openjdk.jmh.annotations.Fork},
+ * and profilers may add JVM arguments; the JVM arguments actually used by forks of each benchmark are stored in the JMH JSON results.
+ */
+public final class Environment {
+  /**
+   * Properties that must be equal for results to be comparable.
+   */
+  private static final List<String> ESSENTIAL_PROPERTIES = List.of(
+      "cpuModel", "cores", "hardwareThreads", "osName", "jdkVendor", "jdkVersion", "gc", "maxHeapSize");
+  private static final Pattern FLAG_PATTERN = Pattern.compile("^\\s*\\S+\\s+(\\w+)\\s+:?=\\s+(\\S+)");
+  private static final Pattern PROPERTY_PATTERN = Pattern.compile("^\\s*([\\w.]+) = (.*)$");
+  private static final Gson gson = new GsonBuilder()
+      .disableHtmlEscaping()
+      .create();
+  private static final Gson prettyGson = new GsonBuilder()
+      .disableHtmlEscaping()
+      .setPrettyPrinting()
+      .create();
+
+  private final Map<String, Object> properties;
+
+  private Environment(final Map<String, Object> properties) {
+    this.properties = properties;
+  }
+
+  public static final Environment capture(final Options options) {
+    final Map<String, Object> properties = new LinkedHashMap<>();
+    final CpuInfo cpuInfo = CpuInfo.capture();
+    properties.put("cpuModel", cpuInfo.model);
+    properties.put("sockets", cpuInfo.sockets);
+    properties.put("cores", cpuInfo.cores);
+    properties.put("hardwareThreads", cpuInfo.hardwareThreads);
+    properties.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+    properties.put("memory", memory().orElse("unknown"));
+    properties.put("osName", System.getProperty("os.name"));
+    properties.put("osVersion", System.getProperty("os.version"));
+    properties.put("osArch", System.getProperty("os.arch"));
+    final String jvm = options.getJvm().orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    final List<String> jvmArgs = jvmArgs(options);
+    properties.put("jvm", jvm);
+    final Map<String, String> jvmProperties = jvmSettings(jvm, jvmArgs, "-XshowSettings:properties", PROPERTY_PATTERN);
+    properties.put("jdkVendor", jvmProperties.getOrDefault("java.vendor", "unknown"));
+    properties.put("jdkVersion", jvmProperties.getOrDefault("java.runtime.version", "unknown"));
+    properties.put("vmName", jvmProperties.getOrDefault("java.vm.name", "unknown"));
+    final Map<String, String> flags = jvmSettings(jvm, jvmArgs, "-XX:+PrintFlagsFinal", FLAG_PATTERN);
+    properties.put("gc", gc(flags));
+    properties.put("initialHeapSize", flags.getOrDefault("InitialHeapSize", "unknown"));
+    properties.put("maxHeapSize", flags.getOrDefault("MaxHeapSize", "unknown"));
+    properties.put("useCompressedOops", flags.getOrDefault("UseCompressedOops", "unknown"));
+    properties.put("alwaysPreTouch", flags.getOrDefault("AlwaysPreTouch", "unknown"));
+    properties.put("jvmArgs", jvmArgs);
+    return new Environment(properties);
+  }
+
+  public static final Environment read(final Path jsonFile) {
+    final Map<String, Object> properties = new LinkedHashMap<>();
+    try (Reader reader = Files.newBufferedReader(jsonFile, StandardCharsets.UTF_8)) {
+      final JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+      for (final Map.Entry<String, JsonElement> property : json.entrySet()) {
+        final JsonElement value = property.getValue();
+        properties.put(property.getKey(), value.isJsonPrimitive() ? value.getAsString() : value.toString());
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return new Environment(properties);
+  }
+
+  public final void write(final Path jsonFile) {
+    try (Writer writer = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8)) {
+      prettyGson.toJson(properties, writer);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return Descriptions of the {@linkplain #ESSENTIAL_PROPERTIES essential properties} that differ,
+   * e.g., {@code "gc: G1 != Parallel"}. Results obtained in environments that differ may not be compared reliably.
+   */
+  public final List<String> essentialDifferences(final Environment other) {
+    return ESSENTIAL_PROPERTIES.stream()
+        .filter(name -> !Objects.equals(property(name), other.property(name)))
+        .map(name -> name + ": " + property(name) + " != " + other.property(name))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @return The string representation of the property value, or {@code null} if the property is unknown.
+   */
+  public final String property(final String name) {
+    final Object value = properties.get(name);
+    return value == null ? null : (value instanceof String ? (String)value : gson.toJson(value));
+  }
+
+  /**
+   * @return The {@linkplain #property(String) string representations} of all properties by their names.
+   */
+  public final Map<String, String> properties() {
+    final Map<String, String> result = new LinkedHashMap<>();
+    properties.keySet().forEach(name -> result.put(name, property(name)));
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return properties.entrySet()
+        .stream()
+        .map(property -> property.getKey() + "=" + property(property.getKey()))
+        .collect(Collectors.joining(", ", "[", "]"));
+  }
+
+  /**
+   * @return All JVM arguments specified via {@code options} in the order in which JMH passes them to forks.
+   */
+  public static final List<String> jvmArgs(final Options options) {
+    final List<String> result = new ArrayList<>();
+    result.addAll(options.getJvmArgsPrepend().orElse(List.of()));
+    result.addAll(options.getJvmArgs().orElse(List.of()));
+    result.addAll(options.getJvmArgsAppend().orElse(List.of()));
+    return result;
+  }
+
+  /**
+   * Runs {@code <jvm> <jvmArgs> <option> -version} and collects the names and values matched by the {@code pattern}
+   * in both the standard output and the standard error, because, e.g., {@code -XshowSettings:properties} prints to the latter.
+   */
+  private static final Map<String, String> jvmSettings(
+      final String jvm, final Collection<String> jvmArgs, final String option, final Pattern pattern) {
+    final List<String> command = new ArrayList<>();
+    command.add(jvm);
+    command.addAll(jvmArgs);
+    command.add(option);
+    command.add("-version");
+    final Map<String, String> result = new LinkedHashMap<>();
+    try {
+      final Process process = new ProcessBuilder(command)
+          .redirectErrorStream(true)
+          .start();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final Matcher matcher = pattern.matcher(line);
+          if (matcher.find()) {
+            result.put(matcher.group(1), matcher.group(2));
+          }
+        }
+      }
+      process.waitFor(1, TimeUnit.MINUTES);
+    } catch (final IOException e) {
+      System.err.printf("# sandbox: failed to obtain JVM settings via %s: %s%n", option, e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+
+  private static final String gc(final Map<String, String> flags) {
+    return List.of("Epsilon", "Z", "Shenandoah", "G1", "Parallel", "Serial")
+        .stream()
+        .filter(gc -> "true".equals(flags.get("Use" + gc + "GC")))
+        .findFirst()
+        .orElse("unknown");
+  }
+
+  private static final Optional<String> memory() {
+    return readLines(Paths.get("/proc/meminfo")).stream()
+        .filter(line -> line.startsWith("MemTotal:"))
+        .map(line -> line.substring("MemTotal:".length()).trim())
+        .findFirst()
+        .or(() -> command("sysctl", "-n", "hw.memsize").map(bytes -> bytes + " B"));
+  }
+
+  private static final List<String> readLines(final Path file) {
+    try {
+      return Files.isReadable(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : List.of();
+    } catch (final IOException e) {
+      return List.of();
+    }
+  }
+
+  private static final Optional<String> command(final String... command) {
+    try {
+      final Process process = new ProcessBuilder(command)
+          .redirectError(ProcessBuilder.Redirect.DISCARD)
+          .start();
+      final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+      return process.waitFor() == 0 && !output.isEmpty() ? Optional.of(output) : Optional.empty();
+    } catch (final IOException e) {
+      return Optional.empty();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final class CpuInfo {
+    private final String model;
+    private final Object sockets;
+    private final Object cores;
+    private final Object hardwareThreads;
+
+    private CpuInfo(final String model, final Object sockets, final Object cores, final Object hardwareThreads) {
+      this.model = model;
+      this.sockets = sockets;
+      this.cores = cores;
+      this.hardwareThreads = hardwareThreads;
+    }
+
+    private static final CpuInfo capture() {
+      final List<String> cpuinfo = readLines(Paths.get("/proc/cpuinfo"));
+      final CpuInfo result;
+      if (!cpuinfo.isEmpty()) {//Linux
+        String model = "unknown";
+        final Set<String> sockets = new HashSet<>();
+        final Set<String> cores = new HashSet<>();
+        int hardwareThreads = 0;
+        String socket = "0";
+        for (final String line : cpuinfo) {
+          final int colonIdx = line.indexOf(':');
+          if (colonIdx < 0) {
+            continue;
+          }
+          final String key = line.substring(0, colonIdx).trim();
+          final String value = line.substring(colonIdx + 1).trim();
+          switch (key) {
+            case "processor": {
+              hardwareThreads++;
+              break;
+            }
+            case "model name": {
+              model = value;
+              break;
+            }
+            case "physical id": {
+              socket = value;
+              sockets.add(value);
+              break;
+            }
+            case "core id": {
+              cores.add(socket + ":" + value);
+              break;
+            }
+            default: {
+              //ignore
+            }
+          }
+        }
+        result = new CpuInfo(
+            model,
+            sockets.isEmpty() ? "unknown" : sockets.size(),
+            cores.isEmpty() ? "unknown" : cores.size(),
+            hardwareThreads);
+      } else {//macOS or unknown
+        result = new CpuInfo(
+            command("sysctl", "-n", "machdep.cpu.brand_string")
+                .or(() -> Optional.ofNullable(System.getenv("PROCESSOR_IDENTIFIER")))
+                .orElse("unknown"),
+            command("sysctl", "-n", "hw.packages").map(v -> (Object)v).orElse("unknown"),
+            command("sysctl", "-n", "hw.physicalcpu").map(v -> (Object)v).orElse("unknown"),
+            command("sysctl", "-n", "hw.logicalcpu").map(v -> (Object)v).orElse(Runtime.getRuntime().availableProcessors()));
+      }
+      return result;
+    }
+  }
+}
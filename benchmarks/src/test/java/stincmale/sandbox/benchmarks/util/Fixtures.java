@@ -0,0 +1,90 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Deterministic datasets used by benchmarks, a.k.a. fixtures, which are generated once and are then shared by all forks
+ * via memory-mapped files, so that forks do not spend time generating them.
+ * <p>
+ * Fixtures are stored in {@code <sandbox.fixturesDir>/<name>-<version>.bin}, the default directory is {@code <java.io.tmpdir>/sandbox-fixtures}.
+ * {@link JmhOptions#newOptionsBuilder(java.util.function.Consumer)} passes {@code sandbox.fixturesDir} to forks if it is specified.
+ * A fixture file is generated if it does not exist or has a wrong size. Generators must be deterministic, e.g.,
+ * use a {@link java.util.Random} with a fixed seed. The version of a fixture identifies its generator: if the generator uses a seed,
+ * the seed should be used as the version, otherwise the version must be changed whenever the generator is changed,
+ * because the content of an existing fixture file is not checked.
+ * <p>
+ * The same fixture may be generated concurrently by multiple JVMs, in which case all but one of the generated files are discarded.
+ */
+public final class Fixtures {
+  private static final Path fixturesDir = Paths.get(System.getProperty("sandbox.fixturesDir",
+      Paths.get(System.getProperty("java.io.tmpdir"), "sandbox-fixtures").toString()));
+
+  private Fixtures() {
+  }
+
+  /**
+   * @param name Identifies the fixture and must be a valid file name, e.g., {@code "PrimitiveDataTypeMathPerformanceTest.operands"}.
+   * @param version Identifies the generator, e.g., the seed it uses.
+   * @param size The size of the fixture in bytes.
+   * @param generator Fills the buffer of the specified size. It is called only if the fixture has not been generated yet.
+   * @return A read-only buffer with the content of the fixture, the position is 0.
+   */
+  public static final ByteBuffer map(final String name, final long version, final int size, final Consumer<ByteBuffer> generator) {
+    if (size < 0) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be negative", "size", size));
+    }
+    final Path fixtureFile = fixturesDir.resolve(name + "-" + version + ".bin");
+    try {
+      if (!Files.exists(fixtureFile) || Files.size(fixtureFile) != size) {
+        generate(fixtureFile, size, generator);
+      }
+      try (FileChannel channel = FileChannel.open(fixtureFile, StandardOpenOption.READ)) {
+        //the mapping remains valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Acts as {@link #map(String, long, int, Consumer)} and copies the fixture to a new array.
+   *
+   * @param generator Maps an index in the array to the value at this index.
+   */
+  public static final long[] longs(final String name, final long version, final int length, final IntToLongFunction generator) {
+    final long[] result = new long[length];
+    map(name, version, Math.multiplyExact(length, Long.BYTES), buffer -> {
+      for (int i = 0; i < length; i++) {
+        buffer.putLong(generator.applyAsLong(i));
+      }
+    }).asLongBuffer()
+        .get(result);
+    return result;
+  }
+
+  private static final void generate(final Path fixtureFile, final int size, final Consumer<ByteBuffer> generator) throws IOException {
+    Files.createDirectories(fixturesDir);
+    final Path tmpFixtureFile = Files.createTempFile(fixturesDir, fixtureFile.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmpFixtureFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        generator.accept(buffer);
+        buffer.force();
+      }
+      Files.move(tmpFixtureFile, fixtureFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFixtureFile);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stack samples aggregated into a <a href="https://www.brendangregg.com/flamegraphs.html">flame graph</a>.
+ * The graph may be written either in the collapsed stacks format, which is the input format of the
+ * <a href="https://github.com/brendangregg/FlameGraph">FlameGraph</a> scripts and of many other tools,
+ * or as a self-contained SVG image, which shows frame details in tooltips.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class FlameGraph {
+  private static final int WIDTH = 1200;
+  private static final int FRAME_HEIGHT = 16;
+  private static final int FONT_SIZE = 11;
+  private static final double CHAR_WIDTH = 0.59 * FONT_SIZE;
+  private static final int PADDING = 10;
+  private static final int TITLE_HEIGHT = 2 * FRAME_HEIGHT;
+
+  private final Frame root;
+
+  public FlameGraph() {
+    root = new Frame("all");
+  }
+
+  /**
+   * @param stack Frames from the bottom to the top of a stack, e.g., {@code ["Thread.run", "ListPerformanceTest.iterate"]}.
+   * @param count The number of samples with this stack.
+   */
+  public final void add(final List<String> stack, final long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be negative", "count", count));
+    }
+    Frame frame = root;
+    frame.count += count;
+    for (final String name : stack) {
+      frame = frame.children.computeIfAbsent(name, Frame::new);
+      frame.count += count;
+    }
+    frame.selfCount += count;
+  }
+
+  /**
+   * Adds samples written by {@link #writeCollapsed(Path)}, e.g., to merge flame graphs.
+   */
+  public final void addCollapsed(final Path file) {
+    try {
+      for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (line.isBlank()) {
+          continue;
+        }
+        final int countIdx = line.lastIndexOf(' ');//frame names may contain spaces, e.g., " [native]", but counts may not
+        add(List.of(line.substring(0, countIdx).split(";")), Long.parseLong(line.substring(countIdx + 1)));
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return The total number of samples.
+   */
+  public final long count() {
+    return root.count;
+  }
+
+  /**
+   * Writes lines {@code frame1;frame2;...;frameN count} sorted lexicographically.
+   */
+  public final void writeCollapsed(final Path file) {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (final Frame child : root.children.values()) {
+        writeCollapsed(child, child.name, writer);
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public final void writeSvg(final Path file, final String title) {
+    final int depth = root.depth();
+    final int height = TITLE_HEIGHT + (depth + 1) * FRAME_HEIGHT + PADDING;
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write(String.format(Locale.ROOT, "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>%n"
+              + "<svg version=\"1.1\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\" xmlns=\"http://www.w3.org/2000/svg\">%n"
+              + "<style>text {font-family: Verdana, sans-serif; font-size: %dpx; fill: black;} rect {stroke: white; stroke-width: 0.5;}</style>%n"
+              + "<rect x=\"0\" y=\"0\" width=\"%d\" height=\"%d\" fill=\"#f8f8f8\"/>%n"
+              + "<text x=\"%d\" y=\"%d\" style=\"font-size: %dpx\">%s (%d samples)</text>%n",
+          WIDTH, height, WIDTH, height, FONT_SIZE, WIDTH, height, PADDING, FRAME_HEIGHT + FONT_SIZE / 2, FONT_SIZE + 4, escape(title), root.count));
+      if (root.count > 0) {
+        writeSvg(root, PADDING, 0, (WIDTH - 2d * PADDING) / root.count, height - PADDING, writer);
+      }
+      writer.write(String.format("</svg>%n"));
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final void writeSvg(
+      final Frame frame, final double x, final int level, final double pixelsPerSample, final int bottom, final Writer writer) throws IOException {
+    final double width = frame.count * pixelsPerSample;
+    if (width < 0.1) {//too narrow to be visible
+      return;
+    }
+    final double y = bottom - (level + 1) * FRAME_HEIGHT;
+    final String tooltip = String.format(Locale.ROOT, "%s (%d samples, %.2f%%, self %d samples)",
+        frame.name, frame.count, 100d * frame.count / root.count, frame.selfCount);
+    writer.write(String.format(Locale.ROOT, "<g><title>%s</title><rect x=\"%.1f\" y=\"%.1f\" width=\"%.1f\" height=\"%d\" fill=\"%s\"/>",
+        escape(tooltip), x, y, width, FRAME_HEIGHT, color(frame.name)));
+    final int maxChars = (int)((width - 6) / CHAR_WIDTH);
+    if (maxChars >= 3) {
+      final String label = frame.name.length() <= maxChars ? frame.name : frame.name.substring(0, maxChars - 2) + "..";
+      writer.write(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\">%s</text>", x + 3, y + FRAME_HEIGHT - 4, escape(label)));
+    }
+    writer.write(String.format("</g>%n"));
+    double childX = x;
+    for (final Frame child : frame.children.values()) {
+      writeSvg(child, childX, level + 1, pixelsPerSample, bottom, writer);
+      childX += child.count * pixelsPerSample;
+    }
+  }
+
+  private static final void writeCollapsed(final Frame frame, final String stack, final Writer writer) throws IOException {
+    if (frame.selfCount > 0) {
+      writer.write(stack + " " + frame.selfCount + System.lineSeparator());
+    }
+    for (final Frame child : frame.children.values()) {
+      writeCollapsed(child, stack + ";" + child.name, writer);
+    }
+  }
+
+  /**
+   * Warm colors that are stable for a given frame name, so that graphs of different benchmarks may be compared visually.
+   */
+  private static final String color(final String name) {
+    final int hash = name.hashCode();
+    final int r = 205 + Math.floorMod(hash, 50);
+    final int g = 80 + Math.floorMod(hash >>> 8, 150);
+    final int b = Math.floorMod(hash >>> 16, 55);
+    return String.format(Locale.ROOT, "rgb(%d,%d,%d)", r, g, b);
+  }
+
+  /**
+   * Escapes XML special characters, which makes the string usable in HTML as well.
+   */
+  static final String escape(final String s) {
+    return s.replace("&", "&amp;")
+        .replace("<", "&lt;")
+        .replace(">", "&gt;")
+        .replace("\"", "&quot;");
+  }
+
+  private static final class Frame {
+    private final String name;
+    private final Map<String, Frame> children;
+    private long count;
+    private long selfCount;
+
+    private Frame(final String name) {
+      this.name = name;
+      children = new TreeMap<>();
+    }
+
+    private final int depth() {
+      int result = 0;
+      for (final Frame child : children.values()) {
+        result = Math.max(result, child.depth() + 1);
+      }
+      return result;
+    }
+  }
+}
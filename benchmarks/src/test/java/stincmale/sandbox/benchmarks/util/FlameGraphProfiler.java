@@ -0,0 +1,229 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.profile.ProfilerException;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * A JMH profiler that samples stacks of each fork with the JDK Flight Recorder ({@code jdk.ExecutionSample})
+ * and writes a {@link FlameGraph} per benchmark, i.e., per benchmark method, {@code @Param} values, mode and number of threads.
+ * Samples of all forks of a benchmark are merged into {@code <sandbox.resultsDir>/flamegraphs/<benchmark>.collapsed}
+ * and {@code <sandbox.resultsDir>/flamegraphs/<benchmark>.svg}, e.g.,
+ * {@code ListPerformanceTest.iterate-listDescriptor=LINKED_LIST-size=5000-thrpt-threads1.svg}.
+ * <p>
+ * {@linkplain ParallelForks Parallel runs} write flame graphs {@code <benchmark>-run<run>.*},
+ * which are {@linkplain #mergeParallelRuns(Collection, int) merged} after all runs are completed.
+ * <p>
+ * Only samples of benchmark code are used, and frames below the JMH-generated stub that calls a benchmark method are omitted.
+ * Warmup iterations are sampled as well.
+ * The sampling period may be specified as {@code period=<duration>}, the default is {@value #DEFAULT_PERIOD}.
+ */
+public final class FlameGraphProfiler implements ExternalProfiler {
+  private static final String DEFAULT_PERIOD = "10 ms";
+
+  private final Path flameGraphsDir;
+  private final Path settingsFile;
+  private final Map<String, FlameGraph> flameGraphsByBenchmark;
+  @Nullable
+  private String benchmark;
+  @Nullable
+  private Path recordingFile;
+
+  public FlameGraphProfiler() throws ProfilerException {
+    this("");
+  }
+
+  public FlameGraphProfiler(final String initLine) throws ProfilerException {
+    String period = DEFAULT_PERIOD;
+    for (final String option : initLine.split(";")) {
+      if (option.isBlank()) {
+        continue;
+      }
+      if (option.startsWith("period=")) {
+        period = option.substring("period=".length()).trim();
+      } else {
+        throw new ProfilerException(String.format("Unknown option %s, the supported option is period=<duration>", option));
+      }
+    }
+    flameGraphsDir = flameGraphsDir();
+    settingsFile = flameGraphsDir.resolve("sandbox-flamegraph.jfc");
+    try {
+      Files.createDirectories(flameGraphsDir);
+      writeSettings(settingsFile, period);
+    } catch (final IOException e) {
+      throw new ProfilerException(e);
+    }
+    flameGraphsByBenchmark = new HashMap<>();
+  }
+
+  @Override
+  public final Collection<String> addJVMInvokeOptions(final BenchmarkParams params) {
+    return List.of();
+  }
+
+  @Override
+  public final Collection<String> addJVMOptions(final BenchmarkParams params) {
+    benchmark = JfrProfiler.fileName(params);
+    try {
+      recordingFile = Files.createTempFile(flameGraphsDir, benchmark + "-", ".jfr");
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return List.of(
+        "-XX:FlightRecorderOptions=stackdepth=" + JfrProfiler.STACK_DEPTH,
+        "-XX:StartFlightRecording=dumponexit=true,settings=" + settingsFile + ",filename=" + recordingFile);
+  }
+
+  @Override
+  public final void beforeTrial(final BenchmarkParams params) {
+  }
+
+  @Override
+  public final Collection<ScalarResult> afterTrial(
+      final BenchmarkResult benchmarkResult, final long pid, final File stdOut, final File stdErr) {
+    final String benchmark = this.benchmark;
+    final Path recordingFile = this.recordingFile;
+    if (benchmark == null || recordingFile == null || !Files.exists(recordingFile)) {
+      System.out.printf("%n# sandbox: there is no JFR recording %s%n", recordingFile);
+    } else {
+      final FlameGraph flameGraph = flameGraphsByBenchmark.computeIfAbsent(benchmark, key -> new FlameGraph());
+      try {
+        try (RecordingFile recording = new RecordingFile(recordingFile)) {
+          while (recording.hasMoreEvents()) {
+            final RecordedEvent event = recording.readEvent();
+            if ("jdk.ExecutionSample".equals(event.getEventType().getName()) && JfrProfiler.isBenchmarkCode(event.getStackTrace())) {
+              flameGraph.add(stack(event.getStackTrace()), 1);
+            }
+          }
+        }
+        Files.delete(recordingFile);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      final String fileName = benchmark + ParallelForks.runFileNameSuffix();
+      final Path collapsedFile = flameGraphsDir.resolve(fileName + ".collapsed");
+      final Path svgFile = flameGraphsDir.resolve(fileName + ".svg");
+      flameGraph.writeCollapsed(collapsedFile);
+      flameGraph.writeSvg(svgFile, benchmark);
+      System.out.printf("%n# sandbox: flame graph of %d samples %s%n", flameGraph.count(), svgFile);
+    }
+    return List.of();
+  }
+
+  /**
+   * Merges the flame graphs written by {@code numberOfRuns} {@linkplain ParallelForks parallel runs} of each benchmark
+   * into a single flame graph, as if all forks were run by a single run, and deletes the flame graphs of the runs.
+   */
+  static final void mergeParallelRuns(final Collection<RunResult> results, final int numberOfRuns) {
+    final Path flameGraphsDir = flameGraphsDir();
+    for (final RunResult result : results) {
+      final String benchmark = JfrProfiler.fileName(result.getParams());
+      final FlameGraph flameGraph = new FlameGraph();
+      boolean merged = false;
+      try {
+        for (int runIdx = 0; runIdx < numberOfRuns; runIdx++) {
+          final String runFileName = benchmark + ParallelForks.runFileNameSuffix(runIdx);
+          final Path runCollapsedFile = flameGraphsDir.resolve(runFileName + ".collapsed");
+          if (Files.exists(runCollapsedFile)) {
+            flameGraph.addCollapsed(runCollapsedFile);
+            Files.delete(runCollapsedFile);
+            Files.deleteIfExists(flameGraphsDir.resolve(runFileName + ".svg"));
+            merged = true;
+          }
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      if (merged) {
+        final Path svgFile = flameGraphsDir.resolve(benchmark + ".svg");
+        flameGraph.writeCollapsed(flameGraphsDir.resolve(benchmark + ".collapsed"));
+        flameGraph.writeSvg(svgFile, benchmark);
+        System.out.printf("%n# sandbox: flame graph of %d samples merged from parallel runs %s%n", flameGraph.count(), svgFile);
+      }
+    }
+  }
+
+  @Override
+  public final boolean allowPrintOut() {
+    return true;
+  }
+
+  @Override
+  public final boolean allowPrintErr() {
+    return true;
+  }
+
+  @Override
+  public final String getDescription() {
+    return "Flame graphs of stacks sampled by JDK Flight Recorder";
+  }
+
+  private static final Path flameGraphsDir() {
+    return JmhRunner.resultsDir().resolve("flamegraphs").toAbsolutePath();
+  }
+
+  /**
+   * @return Frames from the JMH-generated stub that calls a benchmark method to the top of the stack.
+   */
+  private static final List<String> stack(final RecordedStackTrace stackTrace) {
+    final List<RecordedFrame> frames = stackTrace.getFrames();
+    int bottomIdx = frames.size() - 1;
+    for (int i = 0; i < frames.size(); i++) {
+      if (frames.get(i).getMethod().getType().getName().endsWith(JfrProfiler.JMH_GENERATED_CLASS_SUFFIX)) {
+        bottomIdx = i;
+        break;
+      }
+    }
+    final List<String> result = new ArrayList<>(bottomIdx + 1);
+    for (int i = bottomIdx; i >= 0; i--) {
+      final RecordedFrame frame = frames.get(i);
+      result.add(simpleName(frame.getMethod().getType().getName()) + "." + frame.getMethod().getName()
+          + (frame.isJavaFrame() ? "" : " [native]"));
+    }
+    return result;
+  }
+
+  /**
+   * @return A class name without the package, e.g., {@code "LinkedList$ListItr"}.
+   * JFR names hidden classes, e.g., lambdas, like {@code "stincmale.sandbox.benchmarks.ListPerformanceTest$$Lambda$106+0x000000080018f6c0.1643042508"},
+   * so the numeric suffix is kept together with the preceding name.
+   */
+  private static final String simpleName(final String className) {
+    int simpleNameIdx = className.lastIndexOf('.') + 1;
+    if (simpleNameIdx > 0 && className.substring(simpleNameIdx).chars().allMatch(Character::isDigit)) {
+      simpleNameIdx = className.lastIndexOf('.', simpleNameIdx - 2) + 1;
+    }
+    return className.substring(simpleNameIdx);
+  }
+
+  private static final void writeSettings(final Path settingsFile, final String period) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(settingsFile, StandardCharsets.UTF_8)) {
+      writer.write(String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>%n"
+          + "<configuration version=\"2.0\" label=\"sandbox-flamegraph\" description=\"Execution samples\">%n"
+          + "  <event name=\"jdk.ExecutionSample\">%n"
+          + "    <setting name=\"enabled\">true</setting>%n"
+          + "    <setting name=\"period\">" + period + "</setting>%n"
+          + "  </event>%n"
+          + "</configuration>%n"));
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Comparison;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Verdict;
+import stincmale.sandbox.benchmarks.util.ThreadSweep.Scalability;
+import static stincmale.sandbox.benchmarks.util.FlameGraph.escape;
+
+/**
+ * Writes a self-contained static HTML report with tables and charts of the {@linkplain JmhRunner#resultFile(String) results}
+ * stored in a directory, so that results may be shared with people who do not run the benchmarks themselves.
+ * <p>
+ * For each result file the report shows scores per {@code @Param} values of each benchmark method
+ * as a table and as a bar chart, together with the changes relative to the previous results, if there are any.
+ * Previous results of {@code <id>.json} are searched in the {@linkplain #HtmlReport(BaselineComparator, List) previous results directories}
+ * and are compared by using {@link BaselineComparator}.
+ * Latency percentiles are shown for results in the {@link org.openjdk.jmh.annotations.Mode#SampleTime} mode.
+ * Results of a {@linkplain ThreadSweep thread sweep}, i.e., results identified by {@code <id>-threads<n>},
+ * are additionally shown as scalability curves.
+ */
+public final class HtmlReport {
+  private static final Pattern THREAD_SWEEP_ID_PATTERN = Pattern.compile("^(.+)-threads(\\d+)$");
+  private static final String ENVIRONMENT_FILE_SUFFIX = ".environment.json";
+  private static final int CHART_WIDTH = 860;
+  private static final int BAR_HEIGHT = 18;
+  private static final int BAR_GAP = 6;
+  private static final double CHAR_WIDTH = 6.5;
+  private static final int LINE_CHART_WIDTH = 560;
+  private static final int LINE_CHART_HEIGHT = 300;
+  private static final int MARGIN = 50;
+  private static final Map<String, Double> LATENCY_PERCENTILES = percentiles();
+  private static final String STYLE = String.join(System.lineSeparator(),
+      "body {font-family: Verdana, sans-serif; font-size: 13px; margin: 20px; color: #222;}",
+      "h1, h2, h3 {font-weight: normal;}",
+      "h2 {border-bottom: 1px solid #aaa; margin-top: 40px;}",
+      "table {border-collapse: collapse; margin: 10px 0;}",
+      "th, td {border: 1px solid #ccc; padding: 3px 8px; text-align: right;}",
+      "th {background: #eee;}",
+      "td.text {text-align: left;}",
+      ".regression {background: #f8c8c8;}",
+      ".improvement {background: #c8f0c8;}",
+      ".warning {color: #b00;}",
+      ".note {color: #666;}",
+      "svg text {font-family: Verdana, sans-serif; font-size: 11px;}");
+
+  private final BaselineComparator comparator;
+  private final List<Path> previousResultsDirs;
+
+  /**
+   * @param comparator Compares results with previous results.
+   * @param previousResultsDirs Directories with previous results in the order of preference,
+   * e.g., a directory with results of the previous run, and a {@linkplain JmhRunner#baselineFile(String) baseline directory}.
+   */
+  public HtmlReport(final BaselineComparator comparator, final List<Path> previousResultsDirs) {
+    this.comparator = comparator;
+    this.previousResultsDirs = List.copyOf(previousResultsDirs);
+  }
+
+  /**
+   * Writes {@code <resultsDir>/report.html}.
+   *
+   * @param args {@code [<resultsDir> [<previousResultsDir>...]]}. By default, the results are read from {@code sandbox.resultsDir},
+   * and are compared with the results of the previous run, if any, or with the baseline.
+   */
+  public static final void main(final String... args) {
+    final Path resultsDir = args.length > 0 ? Paths.get(args[0]) : JmhRunner.resultsDir();
+    final List<Path> previousResultsDirs = args.length > 1
+        ? Arrays.stream(args, 1, args.length).map(Paths::get).collect(Collectors.toList())
+        : JmhRunner.previousResultsDirs();
+    new HtmlReport(JmhRunner.baselineComparator(), previousResultsDirs).write(resultsDir, resultsDir.resolve("report.html"));
+  }
+
+  /**
+   * @param resultsDir A directory with results, all {@code <id>.json} files in it are included into the report.
+   */
+  public final void write(final Path resultsDir, final Path reportFile) {
+    final List<String> ids = ids(resultsDir);
+    final Map<String, Map<Integer, String>> threadSweeps = new TreeMap<>();
+    for (final String id : ids) {
+      final Matcher matcher = THREAD_SWEEP_ID_PATTERN.matcher(id);
+      if (matcher.matches()) {
+        threadSweeps.computeIfAbsent(matcher.group(1), sweepId -> new TreeMap<>()).put(Integer.parseInt(matcher.group(2)), id);
+      }
+    }
+    final StringBuilder html = new StringBuilder();
+    html.append(String.format("<!DOCTYPE html>%n<html>%n<head>%n<meta charset=\"UTF-8\">%n<title>Benchmark results</title>%n"
+        + "<style>%n%s%n</style>%n</head>%n<body>%n", STYLE));
+    html.append(String.format(Locale.ROOT, "<h1>Benchmark results</h1>%n<p class=\"note\">Generated %s from %s. "
+            + "Changes are relative to the previous results and are marked as regressions or improvements only if they exceed %.1f%% "
+            + "and are statistically significant at the %s level (Welch's t-test on per-fork scores). "
+            + "Error bars show the 99.9%% confidence interval reported by JMH.</p>%n",
+        escape(ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME)), escape(resultsDir.toAbsolutePath().toString()),
+        comparator.threshold() * 100, comparator.significanceLevel()));
+    html.append(String.format("<ul>%n"));
+    threadSweeps.keySet().forEach(sweepId -> html.append(String.format(
+        "<li><a href=\"#%s\">%s: thread scalability</a></li>%n", anchor(sweepId + "-scalability"), escape(sweepId))));
+    ids.forEach(id -> html.append(String.format("<li><a href=\"#%s\">%s</a></li>%n", anchor(id), escape(id))));
+    html.append(String.format("</ul>%n"));
+    threadSweeps.forEach((sweepId, sweepIds) -> appendThreadSweep(sweepId, sweepIds, resultsDir, html));
+    ids.forEach(id -> appendResults(id, resultsDir, html));
+    html.append(String.format("</body>%n</html>%n"));
+    try {
+      Files.createDirectories(reportFile.toAbsolutePath().getParent());
+      try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+        writer.write(html.toString());
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    System.out.printf("%n# sandbox: the report is written to %s%n", reportFile);
+  }
+
+  private final void appendResults(final String id, final Path resultsDir, final StringBuilder html) {
+    final Path resultFile = resultsDir.resolve(id + ".json");
+    final List<StoredResult> results = StoredResult.read(resultFile);
+    final Optional<Path> previousResultFile = previousResultsDirs.stream()
+        .map(dir -> dir.resolve(id + ".json"))
+        .filter(file -> Files.exists(file) && !isSameFile(file, resultFile))
+        .findFirst();
+    final Map<String, Comparison> comparisons = new TreeMap<>();
+    previousResultFile.ifPresent(file -> comparator.compare(StoredResult.read(file), results)
+        .forEach(comparison -> comparisons.put(comparison.current().key(), comparison)));
+    html.append(String.format("<h2 id=\"%s\">%s</h2>%n", anchor(id), escape(id)));
+    final Path environmentFile = JmhRunner.environmentFile(resultFile);
+    final Optional<Environment> environment = Files.exists(environmentFile) ? Optional.of(Environment.read(environmentFile)) : Optional.empty();
+    environment.ifPresent(env -> appendEnvironment(env, html));
+    if (previousResultFile.isPresent()) {
+      html.append(String.format("<p class=\"note\">Compared with %s.</p>%n", escape(previousResultFile.get().toString())));
+      final Path previousEnvironmentFile = JmhRunner.environmentFile(previousResultFile.get());
+      if (environment.isPresent() && Files.exists(previousEnvironmentFile)) {
+        final List<String> differences = environment.get().essentialDifferences(Environment.read(previousEnvironmentFile));
+        if (!differences.isEmpty()) {
+          html.append(String.format("<p class=\"warning\">The environment differs from the previous environment, "
+              + "results may not be comparable: %s</p>%n", escape(String.join(", ", differences))));
+        }
+      }
+    } else {
+      html.append(String.format("<p class=\"note\">There are no previous results to compare with.</p>%n"));
+    }
+    final Map<String, List<StoredResult>> resultsByMethod = new LinkedHashMap<>();
+    results.forEach(result -> resultsByMethod.computeIfAbsent(
+        result.shortBenchmark() + " " + result.mode() + " threads=" + result.threads(), method -> new ArrayList<>()).add(result));
+    resultsByMethod.forEach((method, methodResults) -> appendMethodResults(method, methodResults, comparisons, html));
+  }
+
+  private final void appendMethodResults(
+      final String method, final List<StoredResult> results, final Map<String, Comparison> comparisons, final StringBuilder html) {
+    final StoredResult first = results.get(0);
+    html.append(String.format("<h3>%s</h3>%n", escape(method)));
+    final List<String> paramNames = new ArrayList<>(first.params().keySet());
+    html.append(String.format("<table>%n<tr>"));
+    paramNames.forEach(paramName -> html.append(String.format("<th>%s</th>", escape(paramName))));
+    html.append(String.format("<th>Score</th><th>Error</th><th>Units</th><th>Forks</th>"));
+    final boolean latency = "sample".equals(first.mode());
+    if (latency) {
+      LATENCY_PERCENTILES.keySet().forEach(label -> html.append(String.format("<th>%s</th>", label)));
+    }
+    if (!comparisons.isEmpty()) {
+      html.append(String.format("<th>Previous</th><th>Change</th><th>p-value</th><th>Verdict</th>"));
+    }
+    html.append(String.format("</tr>%n"));
+    for (final StoredResult result : results) {
+      final Comparison comparison = comparisons.get(result.key());
+      html.append(String.format("<tr%s>", comparison == null ? "" : verdictClass(comparison.verdict())));
+      paramNames.forEach(paramName -> html.append(String.format("<td class=\"text\">%s</td>",
+          escape(result.params().getOrDefault(paramName, "")))));
+      html.append(String.format(Locale.ROOT, "<td>%s</td><td>%s</td><td class=\"text\">%s</td><td>%d</td>",
+          number(result.score()), Double.isNaN(result.scoreError()) ? "-" : "± " + number(result.scoreError()),
+          escape(result.scoreUnit()), result.forkScores().length));
+      if (latency) {
+        LATENCY_PERCENTILES.values().forEach(percentile -> {
+          final Double value = result.scorePercentiles().get(percentile);
+          html.append(String.format("<td>%s</td>", value == null ? "-" : number(value)));
+        });
+      }
+      if (!comparisons.isEmpty()) {
+        if (comparison == null) {
+          html.append(String.format("<td>-</td><td>-</td><td>-</td><td class=\"text\">-</td>"));
+        } else {
+          html.append(String.format(Locale.ROOT, "<td>%s</td><td>%+.1f%%</td><td>%s</td><td class=\"text\">%s</td>",
+              number(comparison.baselineScore()), comparison.change() * 100,
+              Double.isNaN(comparison.pValue()) ? "-" : String.format(Locale.ROOT, "%.3g", comparison.pValue()),
+              escape(comparison.verdict().toString())));
+        }
+      }
+      html.append(String.format("</tr>%n"));
+    }
+    html.append(String.format("</table>%n"));
+    appendBarChart(results, comparisons, html);
+  }
+
+  /**
+   * A horizontal bar per result with the error bar, and a mark of the previous score if there is one.
+   */
+  private static final void appendBarChart(final List<StoredResult> results, final Map<String, Comparison> comparisons, final StringBuilder html) {
+    final List<String> labels = results.stream()
+        .map(result -> result.params().isEmpty()
+            ? result.shortBenchmark()
+            : result.params().entrySet().stream().map(param -> param.getKey() + "=" + param.getValue()).collect(Collectors.joining(", ")))
+        .collect(Collectors.toList());
+    final double labelWidth = Math.min(CHART_WIDTH / 2d, labels.stream().mapToInt(String::length).max().orElse(0) * CHAR_WIDTH + 10);
+    final double valueWidth = 120;
+    final double barsWidth = CHART_WIDTH - labelWidth - valueWidth;
+    final double max = results.stream()
+        .flatMap(result -> {
+          final Comparison comparison = comparisons.get(result.key());
+          return Stream.of(
+              result.score() + (Double.isNaN(result.scoreError()) ? 0 : result.scoreError()),
+              comparison == null ? 0 : comparison.baselineScore());
+        })
+        .mapToDouble(Double::doubleValue)
+        .max()
+        .orElse(0);
+    final int height = results.size() * (BAR_HEIGHT + BAR_GAP) + BAR_GAP;
+    html.append(String.format(Locale.ROOT, "<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\">%n", CHART_WIDTH, height));
+    for (int i = 0; i < results.size(); i++) {
+      final StoredResult result = results.get(i);
+      final Comparison comparison = comparisons.get(result.key());
+      final double y = BAR_GAP + i * (BAR_HEIGHT + BAR_GAP);
+      final double width = max > 0 ? result.score() / max * barsWidth : 0;
+      html.append(String.format("<g><title>%s: %s %s</title>",
+          escape(labels.get(i)), number(result.score()), escape(result.scoreUnit())));
+      html.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"end\">%s</text>",
+          labelWidth - 6, y + BAR_HEIGHT - 5, escape(labels.get(i))));
+      html.append(String.format(Locale.ROOT, "<rect x=\"%.1f\" y=\"%.1f\" width=\"%.1f\" height=\"%d\" fill=\"%s\"/>",
+          labelWidth, y, width, BAR_HEIGHT, comparison == null ? "#6a9fd4" : barColor(comparison.verdict())));
+      if (!Double.isNaN(result.scoreError()) && max > 0) {
+        final double errorWidth = result.scoreError() / max * barsWidth;
+        html.append(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"#222\"/>",
+            labelWidth + Math.max(0, width - errorWidth), y + BAR_HEIGHT / 2d, labelWidth + width + errorWidth, y + BAR_HEIGHT / 2d));
+      }
+      if (comparison != null && max > 0) {
+        final double previousX = labelWidth + comparison.baselineScore() / max * barsWidth;
+        html.append(String.format(Locale.ROOT,
+            "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"#222\" stroke-width=\"2\" stroke-dasharray=\"3,2\">"
+            + "<title>previous: %s</title></line>", previousX, y - 2, previousX, y + BAR_HEIGHT + 2, number(comparison.baselineScore())));
+      }
+      html.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\">%s</text></g>%n",
+          labelWidth + barsWidth + 6, y + BAR_HEIGHT - 5, escape(number(result.score()))));
+    }
+    html.append(String.format("</svg>%n"));
+  }
+
+  private static final void appendThreadSweep(
+      final String sweepId, final Map<Integer, String> ids, final Path resultsDir, final StringBuilder html) {
+    final Map<String, Map<Integer, StoredResult>> resultsByNumberOfThreadsByBenchmark = new LinkedHashMap<>();
+    ids.forEach((numberOfThreads, id) -> {
+      for (final StoredResult storedResult : StoredResult.read(resultsDir.resolve(id + ".json"))) {
+        resultsByNumberOfThreadsByBenchmark.computeIfAbsent(storedResult.shortKeyIgnoringThreads(), key -> new TreeMap<>())
+            .put(numberOfThreads, storedResult);
+      }
+    });
+    html.append(String.format("<h2 id=\"%s\">%s: thread scalability</h2>%n", anchor(sweepId + "-scalability"), escape(sweepId)));
+    html.append(String.format("<p class=\"note\">Throughput by the number of threads, and the scaling efficiency in parentheses. "
+        + "The dashed line is the ideal linear scalability. The knee is the last number of threads after which adding threads "
+        + "gives less than a half of the ideal throughput gain.</p>%n"));
+    html.append(String.format("<table>%n<tr><th>Benchmark</th>"));
+    ids.keySet().forEach(numberOfThreads -> html.append(String.format(Locale.ROOT, "<th>%d</th>", numberOfThreads)));
+    html.append(String.format("<th>Knee</th><th>Peak</th><th>Units</th></tr>%n"));
+    final Map<String, Scalability> scalabilities = new LinkedHashMap<>();
+    resultsByNumberOfThreadsByBenchmark.forEach((benchmark, resultsByNumberOfThreads) -> {
+      final Scalability scalability = new Scalability(resultsByNumberOfThreads);
+      scalabilities.put(benchmark, scalability);
+      html.append(String.format("<tr><td class=\"text\">%s</td>", escape(benchmark)));
+      ids.keySet().forEach(numberOfThreads -> {
+        final Double throughput = scalability.throughputs().get(numberOfThreads);
+        html.append(String.format("<td>%s</td>", throughput == null
+            ? "-"
+            : String.format(Locale.ROOT, "%s (%.2f)", number(throughput), scalability.efficiency(numberOfThreads))));
+      });
+      html.append(String.format(Locale.ROOT, "<td>%d</td><td>%d</td><td class=\"text\">%s</td></tr>%n",
+          scalability.knee(), scalability.peak(), escape(scalability.unit())));
+    });
+    html.append(String.format("</table>%n"));
+    scalabilities.forEach((benchmark, scalability) -> appendLineChart(sweepId, benchmark, scalability, html));
+  }
+
+  /**
+   * The throughput by the number of threads with a logarithmic x axis, and the ideal linear scalability.
+   */
+  private static final void appendLineChart(final String sweepId, final String benchmark, final Scalability scalability, final StringBuilder html) {
+    final NavigableMap<Integer, Double> throughputs = scalability.throughputs();
+    final int minThreads = throughputs.firstKey();
+    final int maxThreads = throughputs.lastKey();
+    final double baseThroughputPerThread = throughputs.firstEntry().getValue() / minThreads;
+    final double maxThroughput = throughputs.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+    //the ideal line is clipped, otherwise it makes the actual curve unreadable if the benchmark does not scale
+    final double maxY = Math.max(maxThroughput, Math.min(baseThroughputPerThread * maxThreads, 2 * maxThroughput)) * 1.05;
+    final double plotWidth = LINE_CHART_WIDTH - 2 * MARGIN;
+    final double plotHeight = LINE_CHART_HEIGHT - 2 * MARGIN;
+    final double logRange = Math.max(Math.log(maxThreads) - Math.log(minThreads), 1e-9);
+    final String clipId = anchor(sweepId + "-" + benchmark) + "-clip";
+    html.append(String.format(Locale.ROOT, "<h3>%s</h3>%n<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\">%n",
+        escape(benchmark), LINE_CHART_WIDTH, LINE_CHART_HEIGHT));
+    html.append(String.format(Locale.ROOT, "<defs><clipPath id=\"%s\"><rect x=\"%d\" y=\"%d\" width=\"%.1f\" height=\"%.1f\"/></clipPath></defs>%n",
+        clipId, MARGIN, MARGIN, plotWidth, plotHeight));
+    html.append(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%.1f\" height=\"%.1f\" fill=\"#fafafa\" stroke=\"#888\"/>%n",
+        MARGIN, MARGIN, plotWidth, plotHeight));
+    final List<String> points = new ArrayList<>();
+    final List<String> idealPoints = new ArrayList<>();
+    for (final Map.Entry<Integer, Double> numberOfThreadsAndThroughput : throughputs.entrySet()) {
+      final int numberOfThreads = numberOfThreadsAndThroughput.getKey();
+      final double x = MARGIN + (Math.log(numberOfThreads) - Math.log(minThreads)) / logRange * plotWidth;
+      final double y = MARGIN + plotHeight - numberOfThreadsAndThroughput.getValue() / maxY * plotHeight;
+      final double idealY = MARGIN + plotHeight - baseThroughputPerThread * numberOfThreads / maxY * plotHeight;
+      points.add(String.format(Locale.ROOT, "%.1f,%.1f", x, y));
+      idealPoints.add(String.format(Locale.ROOT, "%.1f,%.1f", x, idealY));
+      html.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"middle\">%d</text>%n",
+          x, MARGIN + plotHeight + 15, numberOfThreads));
+      html.append(String.format(Locale.ROOT,
+          "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"4\" fill=\"#d4572a\"><title>%d threads: %s %s (efficiency %.2f)</title></circle>%n",
+          x, y, numberOfThreads, number(numberOfThreadsAndThroughput.getValue()), escape(scalability.unit()),
+          scalability.efficiency(numberOfThreads)));
+    }
+    html.append(String.format(
+        "<polyline points=\"%s\" fill=\"none\" stroke=\"#888\" stroke-dasharray=\"5,4\" clip-path=\"url(#%s)\"/>%n",
+        String.join(" ", idealPoints), clipId));
+    html.append(String.format("<polyline points=\"%s\" fill=\"none\" stroke=\"#d4572a\" stroke-width=\"2\"/>%n",
+        String.join(" ", points)));
+    for (int i = 0; i <= 4; i++) {
+      final double value = maxY * i / 4;
+      final double y = MARGIN + plotHeight - plotHeight * i / 4;
+      html.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%.3g</text>%n", MARGIN - 4, y + 4, value));
+    }
+    html.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">threads</text>%n",
+        MARGIN + plotWidth / 2, LINE_CHART_HEIGHT - 8));
+    html.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\">%s</text>%n", MARGIN, MARGIN - 10, escape(scalability.unit())));
+    html.append(String.format("</svg>%n"));
+  }
+
+  private static final void appendEnvironment(final Environment environment, final StringBuilder html) {
+    html.append(String.format("<details><summary>Environment</summary>%n<table>%n"));
+    environment.properties().forEach((name, value) -> html.append(String.format(
+        "<tr><th>%s</th><td class=\"text\">%s</td></tr>%n", escape(name), escape(value == null ? "unknown" : value))));
+    html.append(String.format("</table>%n</details>%n"));
+  }
+
+  /**
+   * @return Ranks of the percentiles shown for {@link org.openjdk.jmh.annotations.Mode#SampleTime} results by their labels.
+   */
+  private static final Map<String, Double> percentiles() {
+    final Map<String, Double> result = new LinkedHashMap<>();
+    result.put("p50", 50d);
+    result.put("p99", 99d);
+    result.put("p99.9", 99.9);
+    result.put("max", 100d);
+    return result;
+  }
+
+  private static final List<String> ids(final Path resultsDir) {
+    try (Stream<Path> files = Files.list(resultsDir)) {
+      return files.map(file -> file.getFileName().toString())
+          .filter(fileName -> fileName.endsWith(".json") && !fileName.endsWith(ENVIRONMENT_FILE_SUFFIX))
+          .map(fileName -> fileName.substring(0, fileName.length() - ".json".length()))
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final boolean isSameFile(final Path file1, final Path file2) {
+    try {
+      return Files.isSameFile(file1, file2);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final String verdictClass(final Verdict verdict) {
+    switch (verdict) {
+      case REGRESSION: {
+        return " class=\"regression\"";
+      }
+      case IMPROVEMENT: {
+        return " class=\"improvement\"";
+      }
+      default: {
+        return "";
+      }
+    }
+  }
+
+  private static final String barColor(final Verdict verdict) {
+    switch (verdict) {
+      case REGRESSION: {
+        return "#d46a6a";
+      }
+      case IMPROVEMENT: {
+        return "#6ab46a";
+      }
+      default: {
+        return "#6a9fd4";
+      }
+    }
+  }
+
+  private static final String number(final double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static final String anchor(final String s) {
+    return s.replaceAll("[^A-Za-z0-9_-]", "_");
+  }
+}
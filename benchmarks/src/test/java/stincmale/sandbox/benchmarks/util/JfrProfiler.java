@@ -0,0 +1,363 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.profile.ProfilerException;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * A JMH profiler that records each fork with <a href="https://docs.oracle.com/en/java/java-components/jdk-mission-control/">JDK Flight Recorder</a>
+ * and summarizes monitor contention ({@code jdk.JavaMonitorEnter}), thread parking ({@code jdk.ThreadPark}),
+ * allocation hot sites ({@code jdk.ObjectAllocationInNewTLAB}, {@code jdk.ObjectAllocationOutsideTLAB})
+ * and safepoint pauses (from the start of {@code jdk.SafepointBegin}, which lasts until all threads reach the safepoint,
+ * to the end of {@code jdk.SafepointEnd}).
+ * <p>
+ * The totals are reported as secondary results ({@code jfr.*}) averaged over forks, the hot sites are printed per fork.
+ * Only events emitted by benchmark code are summarized, i.e., events caused by JMH itself, e.g., workers waiting for the next iteration,
+ * are ignored; safepoints are summarized regardless of the threads, because they stop all threads.
+ * Warmup iterations are recorded as well, so the summary describes the whole fork rather than only measurement iterations.
+ * Recordings are kept in {@code <sandbox.resultsDir>/jfr} and may be opened in JDK Mission Control,
+ * recordings made by {@linkplain ParallelForks parallel runs} are named {@code <benchmark>-run<run>-fork<fork>.jfr}.
+ * <p>
+ * Stack traces are recorded with the depth of {@value #STACK_DEPTH} frames, because events whose stack traces are truncated
+ * before the frames of the JMH-generated stub are not recognized as events emitted by benchmark code.
+ * Monitor enter and thread park events shorter than the threshold are not recorded.
+ * The threshold may be specified as {@code threshold=<duration>}, e.g., {@code "threshold=1 ms"}, the default is {@value #DEFAULT_THRESHOLD}.
+ */
+public final class JfrProfiler implements ExternalProfiler {
+  private static final String DEFAULT_THRESHOLD = "20 us";
+  private static final int NUMBER_OF_HOT_SITES = 5;
+  static final String JMH_GENERATED_CLASS_SUFFIX = "_jmhTest";
+  static final int STACK_DEPTH = 512;
+
+  private final Path recordingsDir;
+  private final Path settingsFile;
+  private final Map<String, Integer> forksByBenchmark;
+  @Nullable
+  private Path recordingFile;
+
+  public JfrProfiler() throws ProfilerException {
+    this("");
+  }
+
+  public JfrProfiler(final String initLine) throws ProfilerException {
+    String threshold = DEFAULT_THRESHOLD;
+    for (final String option : initLine.split(";")) {
+      if (option.isBlank()) {
+        continue;
+      }
+      if (option.startsWith("threshold=")) {
+        threshold = option.substring("threshold=".length()).trim();
+      } else {
+        throw new ProfilerException(String.format("Unknown option %s, the supported option is threshold=<duration>", option));
+      }
+    }
+    recordingsDir = JmhRunner.resultsDir().resolve("jfr").toAbsolutePath();
+    settingsFile = recordingsDir.resolve("sandbox.jfc");
+    try {
+      Files.createDirectories(recordingsDir);
+      writeSettings(settingsFile, threshold);
+    } catch (final IOException e) {
+      throw new ProfilerException(e);
+    }
+    forksByBenchmark = new HashMap<>();
+  }
+
+  @Override
+  public final Collection<String> addJVMInvokeOptions(final BenchmarkParams params) {
+    return List.of();
+  }
+
+  @Override
+  public final Collection<String> addJVMOptions(final BenchmarkParams params) {
+    final String benchmark = fileName(params);
+    final int fork = forksByBenchmark.merge(benchmark, 1, Integer::sum);
+    recordingFile = recordingsDir.resolve(benchmark + ParallelForks.runFileNameSuffix() + "-fork" + fork + ".jfr");
+    return List.of(
+        "-XX:FlightRecorderOptions=stackdepth=" + STACK_DEPTH,
+        "-XX:StartFlightRecording=dumponexit=true,settings=" + settingsFile + ",filename=" + recordingFile);
+  }
+
+  @Override
+  public final void beforeTrial(final BenchmarkParams params) {
+  }
+
+  @Override
+  public final Collection<ScalarResult> afterTrial(
+      final BenchmarkResult benchmarkResult, final long pid, final File stdOut, final File stdErr) {
+    final Path recordingFile = this.recordingFile;
+    final Collection<ScalarResult> result;
+    if (recordingFile == null || !Files.exists(recordingFile)) {
+      System.out.printf("%n# sandbox: there is no JFR recording %s%n", recordingFile);
+      result = List.of();
+    } else {
+      final Summary summary = Summary.read(recordingFile);
+      System.out.printf("%n# sandbox: JFR summary of %s%n%s", recordingFile, summary);
+      result = summary.results();
+    }
+    return result;
+  }
+
+  @Override
+  public final boolean allowPrintOut() {
+    return true;
+  }
+
+  @Override
+  public final boolean allowPrintErr() {
+    return true;
+  }
+
+  @Override
+  public final String getDescription() {
+    return "JDK Flight Recorder: monitor contention, thread parking, allocation hot sites, safepoints";
+  }
+
+  /**
+   * @return A file name, e.g., {@code "ListPerformanceTest.iterate-listDescriptor=LINKED_LIST-thrpt-threads1"}.
+   */
+  static final String fileName(final BenchmarkParams params) {
+    final String benchmark = params.getBenchmark();
+    final StringBuilder result = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+    for (final String paramKey : params.getParamsKeys()) {
+      result.append('-')
+          .append(paramKey)
+          .append('=')
+          .append(params.getParam(paramKey));
+    }
+    result.append('-')
+        .append(params.getMode().shortLabel())
+        .append("-threads")
+        .append(params.getThreads());
+    return result.toString().replaceAll("[^A-Za-z0-9._=-]", "_");
+  }
+
+  /**
+   * @return The first frame that does not belong to the JDK, e.g., the benchmark method that called {@link Long#valueOf(long)},
+   * or the top frame if all frames belong to the JDK.
+   */
+  static final String site(@Nullable final RecordedStackTrace stackTrace) {
+    String result = "unknown";
+    if (stackTrace != null && !stackTrace.getFrames().isEmpty()) {
+      final List<RecordedFrame> frames = stackTrace.getFrames();
+      RecordedFrame site = frames.get(0);
+      for (final RecordedFrame frame : frames) {
+        final String type = frame.getMethod().getType().getName();
+        if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+          site = frame;
+          break;
+        }
+      }
+      result = site.getMethod().getType().getName() + "." + site.getMethod().getName() + ":" + site.getLineNumber();
+    }
+    return result;
+  }
+
+  private static final void writeSettings(final Path settingsFile, final String threshold) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(settingsFile, StandardCharsets.UTF_8)) {
+      writer.write(String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>%n"
+          + "<configuration version=\"2.0\" label=\"sandbox\" description=\"Contention, allocation and safepoints\">%n"
+          + event("jdk.JavaMonitorEnter", true, threshold)
+          + event("jdk.ThreadPark", true, threshold)
+          + event("jdk.ObjectAllocationInNewTLAB", true, null)
+          + event("jdk.ObjectAllocationOutsideTLAB", true, null)
+          + event("jdk.SafepointBegin", false, "0 ms")
+          + event("jdk.SafepointEnd", false, "0 ms")
+          + "</configuration>%n"));
+    }
+  }
+
+  private static final String event(final String name, final boolean stackTrace, @Nullable final String threshold) {
+    return "  <event name=\"" + name + "\">%n"
+        + "    <setting name=\"enabled\">true</setting>%n"
+        + "    <setting name=\"stackTrace\">" + stackTrace + "</setting>%n"
+        + (threshold == null ? "" : "    <setting name=\"threshold\">" + threshold + "</setting>%n")
+        + "  </event>%n";
+  }
+
+  /**
+   * @return {@code true} iff the stack trace contains a frame of a class generated by JMH for running benchmark methods.
+   */
+  static final boolean isBenchmarkCode(@Nullable final RecordedStackTrace stackTrace) {
+    return stackTrace != null && stackTrace.getFrames()
+        .stream()
+        .anyMatch(frame -> frame.getMethod().getType().getName().endsWith(JMH_GENERATED_CLASS_SUFFIX));
+  }
+
+  private static final class Summary {
+    private final Sites monitorEnter;
+    private final Sites threadPark;
+    private final Sites allocation;
+    private final Map<Long, Instant> safepointStarts;
+    private final Map<Long, Instant> safepointEnds;
+    private long safepoints;
+    private Duration safepointsDuration;
+    private Duration maxSafepointDuration;
+
+    private Summary() {
+      monitorEnter = new Sites();
+      threadPark = new Sites();
+      allocation = new Sites();
+      safepointStarts = new HashMap<>();
+      safepointEnds = new HashMap<>();
+      safepointsDuration = Duration.ZERO;
+      maxSafepointDuration = Duration.ZERO;
+    }
+
+    private static final Summary read(final Path recordingFile) {
+      final Summary result = new Summary();
+      try (RecordingFile recording = new RecordingFile(recordingFile)) {
+        while (recording.hasMoreEvents()) {
+          result.add(recording.readEvent());
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      result.addSafepoints();
+      return result;
+    }
+
+    private final void add(final RecordedEvent event) {
+      switch (event.getEventType().getName()) {
+        case "jdk.JavaMonitorEnter": {
+          if (isBenchmarkCode(event.getStackTrace())) {
+            monitorEnter.add(className(event.getClass("monitorClass")) + " at " + site(event.getStackTrace()),
+                event.getDuration().toNanos());
+          }
+          break;
+        }
+        case "jdk.ThreadPark": {
+          if (isBenchmarkCode(event.getStackTrace())) {
+            threadPark.add(className(event.getClass("parkedClass")) + " at " + site(event.getStackTrace()), event.getDuration().toNanos());
+          }
+          break;
+        }
+        case "jdk.ObjectAllocationInNewTLAB": {
+          if (isBenchmarkCode(event.getStackTrace())) {//the event is emitted once per TLAB, so the TLAB size is attributed to the allocation site
+            allocation.add(className(event.getClass("objectClass")) + " at " + site(event.getStackTrace()), event.getLong("tlabSize"));
+          }
+          break;
+        }
+        case "jdk.ObjectAllocationOutsideTLAB": {
+          if (isBenchmarkCode(event.getStackTrace())) {
+            allocation.add(className(event.getClass("objectClass")) + " at " + site(event.getStackTrace()),
+                event.getLong("allocationSize"));
+          }
+          break;
+        }
+        case "jdk.SafepointBegin": {
+          safepointStarts.put(event.getLong("safepointId"), event.getStartTime());
+          break;
+        }
+        case "jdk.SafepointEnd": {
+          safepointEnds.put(event.getLong("safepointId"), event.getEndTime());
+          break;
+        }
+        default: {
+          //ignore
+        }
+      }
+    }
+
+    /**
+     * Pairs {@code jdk.SafepointBegin} and {@code jdk.SafepointEnd} events by {@code safepointId} once all events are read,
+     * because events are not necessarily read in the order in which they were emitted.
+     */
+    private final void addSafepoints() {
+      safepointStarts.forEach((safepointId, start) -> {
+        final Instant end = safepointEnds.get(safepointId);
+        if (end != null) {
+          final Duration duration = Duration.between(start, end);
+          safepoints++;
+          safepointsDuration = safepointsDuration.plus(duration);
+          if (duration.compareTo(maxSafepointDuration) > 0) {
+            maxSafepointDuration = duration;
+          }
+        }
+      });
+    }
+
+    private final Collection<ScalarResult> results() {
+      final List<ScalarResult> result = new ArrayList<>();
+      result.add(new ScalarResult("jfr.monitorEnter", monitorEnter.count, "#", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.monitorEnter.time", monitorEnter.weight / 1e6, "ms", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.threadPark", threadPark.count, "#", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.threadPark.time", threadPark.weight / 1e6, "ms", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.alloc", allocation.weight / (1024d * 1024), "MB", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.safepoint", safepoints, "#", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.safepoint.time", safepointsDuration.toNanos() / 1e6, "ms", AggregationPolicy.AVG));
+      result.add(new ScalarResult("jfr.safepoint.max", maxSafepointDuration.toNanos() / 1e6, "ms", AggregationPolicy.MAX));
+      return result;
+    }
+
+    @Override
+    public final String toString() {
+      return String.format("monitor enter: %d events, %.3f ms%n%s", monitorEnter.count, monitorEnter.weight / 1e6,
+          monitorEnter.top(weight -> String.format("%.3f ms", weight / 1e6)))
+          + String.format("thread park: %d events, %.3f ms%n%s", threadPark.count, threadPark.weight / 1e6,
+          threadPark.top(weight -> String.format("%.3f ms", weight / 1e6)))
+          + String.format("allocation: %.3f MB%n%s", allocation.weight / (1024d * 1024),
+          allocation.top(weight -> String.format("%.3f MB", weight / (1024d * 1024))))
+          + String.format("safepoints: %d, %.3f ms, max %.3f ms%n",
+          safepoints, safepointsDuration.toNanos() / 1e6, maxSafepointDuration.toNanos() / 1e6);
+    }
+
+    private static final String className(@Nullable final RecordedClass klass) {
+      return klass == null ? "unknown" : klass.getName();
+    }
+  }
+
+  /**
+   * Event counts and weights (durations in nanoseconds or sizes in bytes) aggregated per site.
+   */
+  private static final class Sites {
+    private final Map<String, long[]> countAndWeightBySite;
+    private long count;
+    private long weight;
+
+    private Sites() {
+      countAndWeightBySite = new HashMap<>();
+    }
+
+    private final void add(final String site, final long weight) {
+      final long[] countAndWeight = countAndWeightBySite.computeIfAbsent(site, key -> new long[2]);
+      countAndWeight[0]++;
+      countAndWeight[1] += weight;
+      count++;
+      this.weight += weight;
+    }
+
+    private final String top(final LongFunction<String> weightFormatter) {
+      return countAndWeightBySite.entrySet()
+          .stream()
+          .sorted((e1, e2) -> Long.compare(e2.getValue()[1], e1.getValue()[1]))
+          .limit(NUMBER_OF_HOT_SITES)
+          .map(siteAndCountAndWeight -> String.format("  %s  %d events  %s%n",
+              weightFormatter.apply(siteAndCountAndWeight.getValue()[1]), siteAndCountAndWeight.getValue()[0], siteAndCountAndWeight.getKey()))
+          .collect(Collectors.joining());
+    }
+  }
+}
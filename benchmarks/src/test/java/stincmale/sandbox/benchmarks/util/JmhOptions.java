@@ -1,35 +1,89 @@
 package stincmale.sandbox.benchmarks.util;
 
 import static java.lang.Boolean.parseBoolean;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.LinuxPerfNormProfiler;
+import org.openjdk.jmh.profile.ProfilerException;
+import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.sandbox.benchmarks.util.CpuAffinity.ThreadPlacement;
 import static org.openjdk.jmh.runner.options.TimeValue.milliseconds;
 
 public final class JmhOptions {
   private static final boolean dryRun = parseBoolean(System.getProperty("sandbox.dryRun", "false"));
   private static final boolean javaServer = !dryRun;
   private static final boolean javaEnableAssertions = dryRun;
+  private static final boolean gcProfiler = parseBoolean(System.getProperty("sandbox.gcProfiler", "false"));
+  private static final boolean jfrProfiler = parseBoolean(System.getProperty("sandbox.jfrProfiler", "false"));
+  private static final boolean flameGraphProfiler = parseBoolean(System.getProperty("sandbox.flameGraphProfiler", "false"));
+  private static final boolean perfNormProfiler = parseBoolean(System.getProperty("sandbox.perfNormProfiler", "false"));
+  private static final String cpus = System.getProperty("sandbox.cpus", "");
+  private static final ThreadPlacement threadPlacement = ThreadPlacement.of(
+      System.getProperty("sandbox.threadPlacement", ThreadPlacement.NONE.toString()));
+  @Nullable
+  private static final String fixturesDir = System.getProperty("sandbox.fixturesDir");
+  private static final String PERF_NORM_PROFILER_OPTIONS = "events=" + String.join(",",
+      "cycles",
+      "instructions",
+      "branches",
+      "branch-misses",
+      "L1-dcache-loads",
+      "L1-dcache-load-misses",
+      "LLC-loads",
+      "LLC-load-misses");
 
   private JmhOptions() {
   }
 
   public static final OptionsBuilder newOptionsBuilder(@Nullable final Consumer<OptionsBuilder> forksWarmupIterationsTuner) {
     final OptionsBuilder result = new OptionsBuilder();
-    result.jvmArgs(
-        "-Xverify:all",
-        "--illegal-access=deny",
-        "-Xms4096m",
-        "-Xmx4096m",
-        javaServer ? "-server" : "-client",
-        javaEnableAssertions ? "-enableassertions" : "-disableassertions")
+    result.jvmArgs(concat(
+        new String[] {
+            "-Xverify:all",
+            "--illegal-access=deny",
+            "-Xms4096m",
+            "-Xmx4096m",
+            javaServer ? "-server" : "-client",
+            javaEnableAssertions ? "-enableassertions" : "-disableassertions"},
+        //benchmarks that support thread placement call CpuAffinity.placeCurrentThread
+        threadPlacement == ThreadPlacement.NONE ? new String[0] : new String[] {"-Dsandbox.threadPlacement=" + threadPlacement},
+        //forks use Fixtures, the path is absolute in case a fork is run in a different working directory
+        fixturesDir == null ? new String[0] : new String[] {"-Dsandbox.fixturesDir=" + Paths.get(fixturesDir).toAbsolutePath()}))
         .shouldDoGC(false)
         .syncIterations(true)
         .shouldFailOnError(true)
         .threads(1)
         .timeout(milliseconds(1000_000));
+    if (gcProfiler) {//reports the allocation rate normalized by the number of operations (gc.alloc.rate.norm, B/op) next to each score
+      result.addProfiler(GCProfiler.class);
+    }
+    if (jfrProfiler) {//records each fork with JFR and summarizes contention, allocation hot sites and safepoints
+      result.addProfiler(JfrProfiler.class);
+    }
+    if (flameGraphProfiler) {//writes a flame graph of stacks sampled by JFR per benchmark
+      result.addProfiler(FlameGraphProfiler.class);
+    }
+    if (perfNormProfiler && PerfNormProfilerSupport.supported) {//reports hardware counters normalized by the number of operations
+      result.addProfiler(LinuxPerfNormProfiler.class, PERF_NORM_PROFILER_OPTIONS);
+    }
+    if (!cpus.isBlank()) {//forks, including JIT compiler and GC threads, run only on the specified CPUs
+      if (CpuAffinity.isSupported()) {
+        result.jvm(CpuAffinity.pinnedJvm(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            CpuAffinity.parseCpuList(cpus),
+            Paths.get(System.getProperty("java.io.tmpdir"), "sandbox-jvms"))
+            .toString());
+      } else {
+        System.err.printf("# sandbox: continuing without pinning forks to the CPUs %s because taskset is not available%n", cpus);
+      }
+    }
     if (dryRun) {
       result.forks(1)
           .warmupTime(milliseconds(50))
@@ -42,6 +96,19 @@ public final class JmhOptions {
     return result;
   }
 
+  /**
+   * Acts as {@link #newOptionsBuilder(Consumer)} but measures latency in the {@link Mode#SampleTime} mode with nanosecond precision.
+   * In this mode JMH times a sample of benchmark method invocations and stores the full histogram of the sampled latencies
+   * in the JSON results, so that tail latencies (p99, p99.9, max), which are hidden by average scores, can be analyzed.
+   * {@link JmhRunner} exports such histograms with {@link LatencyHistograms}.
+   */
+  public static final OptionsBuilder newLatencyOptionsBuilder(@Nullable final Consumer<OptionsBuilder> forksWarmupIterationsTuner) {
+    final OptionsBuilder result = newOptionsBuilder(forksWarmupIterationsTuner);
+    result.mode(Mode.SampleTime)
+        .timeUnit(TimeUnit.NANOSECONDS);
+    return result;
+  }
+
   public static final String includeBenchmarks(final Class<?> klass) {
     return klass.getName() + ".*";
   }
@@ -51,7 +118,14 @@ public final class JmhOptions {
   }
 
   public static final String[] jvmArgsDisableGc() {
-    return new String[] {"-XX:+UnlockExperimentalVMOptions", "-XX:+UseEpsilonGC"};
+    return GarbageCollector.EPSILON.jvmArgs();
+  }
+
+  /**
+   * See {@link JmhRunner#runForEachGc(String, Options, GarbageCollector...)}.
+   */
+  public static final String[] jvmArgsGc(final GarbageCollector gc) {
+    return gc.jvmArgs();
   }
 
   public static final String[] jvmArgsDisableBiasedLocking() {
@@ -71,4 +145,51 @@ public final class JmhOptions {
         .flatMap(Arrays::stream)
         .toArray(String[]::new);
   }
+
+  public enum GarbageCollector {
+    G1("G1", "-XX:+UseG1GC"),
+    PARALLEL("Parallel", "-XX:+UseParallelGC"),
+    Z("Z", "-XX:+UseZGC"),
+    SHENANDOAH("Shenandoah", "-XX:+UseShenandoahGC"),
+    /**
+     * A no-op garbage collector. Benchmarks that allocate much may exhaust the heap and fail when using this collector.
+     */
+    EPSILON("Epsilon", "-XX:+UnlockExperimentalVMOptions", "-XX:+UseEpsilonGC");
+
+    private final String label;
+    private final String[] jvmArgs;
+
+    GarbageCollector(final String label, final String... jvmArgs) {
+      this.label = label;
+      this.jvmArgs = jvmArgs;
+    }
+
+    public final String[] jvmArgs() {
+      return jvmArgs.clone();
+    }
+
+    @Override
+    public final String toString() {
+      return label;
+    }
+  }
+
+  private static final class PerfNormProfilerSupport {
+    private static final boolean supported;
+
+    static {
+      boolean perfNormProfilerSupported;
+      try {
+        new LinuxPerfNormProfiler(PERF_NORM_PROFILER_OPTIONS);
+        perfNormProfilerSupported = true;
+      } catch (final ProfilerException e) {
+        perfNormProfilerSupported = false;
+        System.err.printf("# sandbox: continuing without the perfnorm profiler because it is not supported: %s%n", e.getMessage());
+      }
+      supported = perfNormProfilerSupported;
+    }
+
+    private PerfNormProfilerSupport() {
+    }
+  }
 }
@@ -0,0 +1,287 @@
+package stincmale.sandbox.benchmarks.util;
+
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Double.parseDouble;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Comparison;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Verdict;
+import stincmale.sandbox.benchmarks.util.JmhOptions.GarbageCollector;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.concat;
+import static stincmale.sandbox.benchmarks.util.JmhOptions.jvmArgsGc;
+
+/**
+ * Runs benchmarks, stores their results in the JMH JSON format and checks them against the stored baseline results.
+ * <p>
+ * Results are written to {@code <sandbox.resultsDir>/<id>.json},
+ * the {@link Environment} in which they were obtained is written to {@code <sandbox.resultsDir>/<id>.environment.json}.
+ * If {@code <sandbox.baselineDir>/<id>.json} exists, results are compared with it by using {@link BaselineComparator},
+ * and an {@link AssertionError} is thrown if there are {@linkplain Verdict#REGRESSION regressions}.
+ * If {@code sandbox.updateBaseline} is {@code true}, the results replace the baseline instead.
+ * If {@code sandbox.adaptiveForks} is {@code true}, noisy results are made more precise with {@link AdaptiveForks} before being compared.
+ * Latency histograms of results in the {@link org.openjdk.jmh.annotations.Mode#SampleTime} mode
+ * are exported by {@link LatencyHistograms} to {@code <sandbox.resultsDir>/histograms/<id>}.
+ * Results of the previous run with the same id, if any, are moved to {@code <sandbox.resultsDir>/previous}.
+ * If {@code sandbox.htmlReport} is {@code true}, the {@link HtmlReport} {@code <sandbox.resultsDir>/report.html} is rewritten after each run.
+ * If {@code sandbox.parallelForks} is {@code true}, forks are run by {@link ParallelForks} on sets of {@code sandbox.parallelForksCpus} CPUs,
+ * and if {@code sandbox.parallelForksCheck} is also {@code true}, the results are
+ * {@linkplain ParallelForks#checkAgainstSequential(Options, Path, Path, BaselineComparator) checked} against the results of sequential forks
+ * written to {@code <sandbox.resultsDir>/sequential/<id>.json}.
+ */
+public final class JmhRunner {
+  private static final Path resultsDir = Paths.get(System.getProperty("sandbox.resultsDir", "target/benchmark-results"));
+  private static final Path baselineDir = Paths.get(System.getProperty("sandbox.baselineDir", "baselines"));
+  private static final boolean updateBaseline = parseBoolean(System.getProperty("sandbox.updateBaseline", "false"));
+  private static final double regressionThreshold = parseDouble(System.getProperty("sandbox.regressionThreshold", "0.05"));
+  private static final double regressionSignificanceLevel = parseDouble(System.getProperty("sandbox.regressionSignificanceLevel", "0.01"));
+  private static final boolean adaptiveForks = parseBoolean(System.getProperty("sandbox.adaptiveForks", "false"));
+  private static final double noiseThreshold = parseDouble(System.getProperty("sandbox.noiseThreshold", "0.02"));
+  private static final Duration adaptiveForksTimeBudget = Duration.parse(System.getProperty("sandbox.adaptiveForksTimeBudget", "PT30M"));
+  private static final boolean htmlReport = parseBoolean(System.getProperty("sandbox.htmlReport", "false"));
+  private static final boolean parallelForks = parseBoolean(System.getProperty("sandbox.parallelForks", "false"));
+  private static final int parallelForksCpus = Integer.parseInt(System.getProperty("sandbox.parallelForksCpus", "2"));
+  private static final boolean parallelForksCheck = parseBoolean(System.getProperty("sandbox.parallelForksCheck", "false"));
+
+  private JmhRunner() {
+  }
+
+  /**
+   * @param id Identifies the results, e.g., {@code "ListPerformanceTest"} or {@code "AtomicApiComparisonTest-threads4"}.
+   * Must be a valid file name.
+   * @return Results as reported by JMH. If {@code sandbox.adaptiveForks} is {@code true},
+   * they do not include the additional forks, but the stored results do.
+   */
+  public static final Collection<RunResult> run(final String id, final Options options) throws RunnerException {
+    final Path resultFile = resultFile(id);
+    try {
+      Files.createDirectories(resultFile.toAbsolutePath().getParent());
+      if (Files.exists(resultFile)) {
+        final Path previousResultFile = previousResultFile(id);
+        Files.createDirectories(previousResultFile.toAbsolutePath().getParent());
+        Files.move(resultFile, previousResultFile, StandardCopyOption.REPLACE_EXISTING);
+        if (Files.exists(environmentFile(resultFile))) {
+          Files.move(environmentFile(resultFile), environmentFile(previousResultFile), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    final Environment environment = Environment.capture(options);
+    environment.write(environmentFile(resultFile));
+    System.out.printf("# sandbox: environment %s%n", environment);
+    final Collection<RunResult> result;
+    if (parallelForks) {
+      result = new ParallelForks(parallelForksCpus).run(options, resultFile);
+      if (parallelForksCheck) {
+        ParallelForks.checkAgainstSequential(
+            options, resultFile, resultsDir.resolve("sequential").resolve(resultFile.getFileName()), baselineComparator());
+      }
+    } else {
+      result = new Runner(new OptionsBuilder()
+          .parent(options)
+          .result(resultFile.toString())
+          .resultFormat(ResultFormatType.JSON)
+          .build())
+          .run();
+    }
+    if (adaptiveForks) {
+      new AdaptiveForks(noiseThreshold, adaptiveForksTimeBudget).reduceNoise(resultFile, options);
+    }
+    LatencyHistograms.export(resultFile, resultsDir.resolve("histograms").resolve(id));
+    if (htmlReport) {
+      new HtmlReport(baselineComparator(), previousResultsDirs()).write(resultsDir, resultsDir.resolve("report.html"));
+    }
+    final Path baselineFile = baselineFile(id);
+    if (updateBaseline) {
+      try {
+        Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+        Files.copy(resultFile, baselineFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(environmentFile(resultFile), environmentFile(baselineFile), StandardCopyOption.REPLACE_EXISTING);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      System.out.printf("%n# sandbox: updated the baseline %s%n", baselineFile);
+    } else if (Files.exists(baselineFile)) {
+      checkAgainstBaseline(baselineFile, resultFile, environment);
+    } else {
+      System.out.printf("%n# sandbox: there is no baseline %s to compare the results with%n", baselineFile);
+    }
+    return result;
+  }
+
+  /**
+   * Runs the benchmarks once per each supported garbage collector by {@linkplain OptionsBuilder#jvmArgsAppend(String...) appending}
+   * {@link GarbageCollector#jvmArgs()} to the JVM arguments of forks, and prints scores grouped per collector.
+   * Garbage collectors not supported by the JVM, e.g., Shenandoah in Oracle JDK builds, are skipped.
+   * The {@code options} must not select a garbage collector.
+   *
+   * @param id See {@link #run(String, Options)}. Results for each collector are identified by {@code <id>-gc<collector>},
+   * e.g., {@code "ListPerformanceTest-gcShenandoah"}.
+   * @param gcs Garbage collectors to use. If empty, all {@link GarbageCollector}s are used.
+   */
+  public static final Map<GarbageCollector, Collection<RunResult>> runForEachGc(
+      final String id, final Options options, final GarbageCollector... gcs) throws RunnerException {
+    final String jvm = options.getJvm().orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    final Map<GarbageCollector, Collection<RunResult>> result = new EnumMap<>(GarbageCollector.class);
+    final Map<String, Path> resultFiles = new LinkedHashMap<>();
+    for (final GarbageCollector gc : gcs.length == 0 ? GarbageCollector.values() : gcs) {
+      if (isSupported(jvm, gc)) {
+        final String gcId = id + "-gc" + gc;
+        result.put(gc, run(gcId, new OptionsBuilder()
+            .parent(options)
+            .jvmArgsAppend(concat(options.getJvmArgsAppend().orElse(List.of()).toArray(String[]::new), jvmArgsGc(gc)))
+            .build()));
+        resultFiles.put(gc.toString(), resultFile(gcId));
+      } else {
+        System.out.printf("%n# sandbox: skipping the %s garbage collector because it is not supported by %s%n", gc, jvm);
+      }
+    }
+    printGrouped("garbage collector", resultFiles);
+    return result;
+  }
+
+  /**
+   * Prints scores from the specified {@linkplain #resultFile(String) result files} side by side,
+   * one row per benchmark, one column per group.
+   *
+   * @param groupName A human-readable name of what distinguishes the groups, e.g., {@code "garbage collector"}.
+   * @param resultFiles Maps a group label to a result file.
+   */
+  public static final void printGrouped(final String groupName, final Map<String, Path> resultFiles) {
+    final Map<String, Map<String, StoredResult>> resultsByKeyByGroup = new LinkedHashMap<>();
+    for (final Map.Entry<String, Path> groupAndResultFile : resultFiles.entrySet()) {
+      for (final StoredResult storedResult : StoredResult.read(groupAndResultFile.getValue())) {
+        resultsByKeyByGroup.computeIfAbsent(storedResult.shortKey(), key -> new LinkedHashMap<>())
+            .put(groupAndResultFile.getKey(), storedResult);
+      }
+    }
+    final int keyWidth = resultsByKeyByGroup.keySet()
+        .stream()
+        .mapToInt(String::length)
+        .max()
+        .orElse(0);
+    final int columnWidth = 24;
+    final StringBuilder table = new StringBuilder(String.format("%n# sandbox: scores per %s%n%-" + keyWidth + "s", groupName, "Benchmark"));
+    resultFiles.keySet().forEach(group -> table.append(String.format("  %" + columnWidth + "s", group)));
+    table.append(System.lineSeparator());
+    resultsByKeyByGroup.forEach((key, resultsByGroup) -> {
+      table.append(String.format("%-" + keyWidth + "s", key));
+      resultFiles.keySet().forEach(group -> {
+        final StoredResult storedResult = resultsByGroup.get(group);
+        table.append(String.format("  %" + columnWidth + "s", storedResult == null
+            ? "-"
+            : String.format("%.3f ± %.3f %s", storedResult.score(), storedResult.scoreError(), storedResult.scoreUnit())));
+      });
+      table.append(System.lineSeparator());
+    });
+    System.out.print(table);
+  }
+
+  /**
+   * @return The directory specified via {@code sandbox.resultsDir}.
+   */
+  public static final Path resultsDir() {
+    return resultsDir;
+  }
+
+  public static final Path resultFile(final String id) {
+    return resultsDir.resolve(id + ".json");
+  }
+
+  /**
+   * @return The file where the results of the previous run are moved before running benchmarks again with the same {@code id}.
+   */
+  public static final Path previousResultFile(final String id) {
+    return resultsDir.resolve("previous").resolve(id + ".json");
+  }
+
+  /**
+   * @return Directories with results that the current results are compared with in an {@link HtmlReport}, in the order of preference:
+   * results of the previous run, and the baseline.
+   */
+  public static final List<Path> previousResultsDirs() {
+    return List.of(resultsDir.resolve("previous"), baselineDir);
+  }
+
+  /**
+   * @return A {@link BaselineComparator} configured via {@code sandbox.regressionThreshold}, {@code sandbox.regressionSignificanceLevel}.
+   */
+  public static final BaselineComparator baselineComparator() {
+    return new BaselineComparator(regressionThreshold, regressionSignificanceLevel);
+  }
+
+  public static final Path baselineFile(final String id) {
+    return baselineDir.resolve(id + ".json");
+  }
+
+  /**
+   * @param resultFile Either a {@linkplain #resultFile(String) result file}, or a {@linkplain #baselineFile(String) baseline file}.
+   */
+  public static final Path environmentFile(final Path resultFile) {
+    final String resultFileName = resultFile.getFileName().toString();
+    return resultFile.resolveSibling(resultFileName.substring(0, resultFileName.length() - ".json".length()) + ".environment.json");
+  }
+
+  private static final boolean isSupported(final String jvm, final GarbageCollector gc) {
+    final List<String> command = new ArrayList<>();
+    command.add(jvm);
+    command.addAll(List.of(jvmArgsGc(gc)));
+    command.add("-version");
+    try {
+      return new ProcessBuilder(command)
+          .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+          .redirectError(ProcessBuilder.Redirect.DISCARD)
+          .start()
+          .waitFor() == 0;
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final void checkAgainstBaseline(final Path baselineFile, final Path resultFile, final Environment environment) {
+    final Path baselineEnvironmentFile = environmentFile(baselineFile);
+    if (Files.exists(baselineEnvironmentFile)) {
+      final List<String> environmentDifferences = environment.essentialDifferences(Environment.read(baselineEnvironmentFile));
+      if (!environmentDifferences.isEmpty()) {
+        System.out.printf("%n# sandbox: WARNING the environment differs from the baseline environment %s, results may not be comparable: %s%n",
+            baselineEnvironmentFile, environmentDifferences);
+      }
+    }
+    final BaselineComparator comparator = baselineComparator();
+    final List<Comparison> comparisons = comparator.compare(StoredResult.read(baselineFile), StoredResult.read(resultFile));
+    System.out.printf("%n# sandbox: comparison with the baseline %s (threshold %.1f%%, significance level %s)%n",
+        baselineFile, comparator.threshold() * 100, comparator.significanceLevel());
+    comparisons.forEach(comparison -> System.out.println(comparison));
+    final List<Comparison> regressions = comparisons.stream()
+        .filter(comparison -> comparison.verdict() == Verdict.REGRESSION)
+        .collect(Collectors.toList());
+    if (!regressions.isEmpty()) {
+      throw new AssertionError(String.format("%d benchmark(s) regressed comparing to the baseline %s:%n%s",
+          regressions.size(),
+          baselineFile,
+          regressions.stream()
+              .map(Comparison::toString)
+              .collect(Collectors.joining(System.lineSeparator()))));
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package stincmale.sandbox.benchmarks.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Exports latency histograms recorded by JMH in the {@link org.openjdk.jmh.annotations.Mode#SampleTime} mode
+ * (see {@link JmhOptions#newLatencyOptionsBuilder(java.util.function.Consumer)}) from a JMH JSON result file
+ * to files in the <a href="https://github.com/HdrHistogram/HdrHistogram">HdrHistogram</a> log format,
+ * which may be analyzed and plotted with HdrHistogram tools, e.g., {@code HistogramLogProcessor}, or
+ * <a href="https://hdrhistogram.github.io/HdrHistogram/plotFiles.html">the online plotter</a>.
+ * <p>
+ * Each log contains one interval histogram per measurement iteration, and iterations of each fork are preceded by a comment,
+ * e.g., {@code "#fork 1"}. Histograms are not tagged because HdrHistogram tools ignore tagged histograms unless asked otherwise.
+ * JMH does not store when iterations happened, so interval timestamps are iteration numbers in seconds.
+ * Values are in nanoseconds.
+ */
+public final class LatencyHistograms {
+  private static final int NUMBER_OF_SIGNIFICANT_VALUE_DIGITS = 3;
+  private static final Map<String, Double> NANOSECONDS_PER_UNIT = Map.of(
+      "ns", 1d,
+      "us", 1e3,
+      "ms", 1e6,
+      "s", 1e9,
+      "min", 60e9);
+
+  private LatencyHistograms() {
+  }
+
+  /**
+   * Writes {@code <histogramsDir>/<benchmark>.hlog} for each result with latency histograms,
+   * e.g., {@code AtomicApiComparisonTest.atomicLongCompareAndSetBackoff-sample-threads4.hlog},
+   * and prints p50, p99, p99.9 and the maximum of each benchmark. Does nothing if there are no such results.
+   *
+   * @return The written files.
+   */
+  public static final List<Path> export(final Path resultFile, final Path histogramsDir) {
+    final JsonArray jsonResults;
+    try (Reader reader = Files.newBufferedReader(resultFile, StandardCharsets.UTF_8)) {
+      jsonResults = JsonParser.parseReader(reader).getAsJsonArray();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    final List<StoredResult> storedResults = StoredResult.read(resultFile);//in the same order as jsonResults
+    final Map<StoredResult, Histogram> histograms = new LinkedHashMap<>();
+    final List<Path> result = new ArrayList<>();
+    for (int i = 0; i < jsonResults.size(); i++) {
+      final JsonObject primaryMetric = jsonResults.get(i).getAsJsonObject().getAsJsonObject("primaryMetric");
+      if (!primaryMetric.has("rawDataHistogram")) {
+        continue;
+      }
+      final StoredResult storedResult = storedResults.get(i);
+      final double nanosecondsPerUnit = nanosecondsPerUnit(storedResult.scoreUnit());
+      final Path histogramFile = histogramsDir.resolve(storedResult.fileName() + ".hlog");
+      final Histogram total = new Histogram(NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+      try {
+        Files.createDirectories(histogramsDir);
+        try (PrintStream out = new PrintStream(histogramFile.toFile(), StandardCharsets.UTF_8)) {
+          final HistogramLogWriter writer = new HistogramLogWriter(out);
+          writer.outputComment(String.format("%s, values are in nanoseconds", storedResult.key()));
+          writer.outputLogFormatVersion();
+          writer.outputStartTime(0);
+          writer.outputLegend();
+          int iterationIdx = 0;
+          int forkIdx = 0;
+          for (final JsonElement fork : primaryMetric.getAsJsonArray("rawDataHistogram")) {
+            forkIdx++;
+            writer.outputComment("fork " + forkIdx);
+            for (final JsonElement iteration : fork.getAsJsonArray()) {
+              final Histogram histogram = new Histogram(NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+              for (final JsonElement valueAndCount : iteration.getAsJsonArray()) {
+                histogram.recordValueWithCount(
+                    Math.round(valueAndCount.getAsJsonArray().get(0).getAsDouble() * nanosecondsPerUnit),
+                    valueAndCount.getAsJsonArray().get(1).getAsLong());
+              }
+              writer.outputIntervalHistogram(iterationIdx, iterationIdx + 1, histogram, 1);
+              total.add(histogram);
+              iterationIdx++;
+            }
+          }
+        }
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      histograms.put(storedResult, total);
+      result.add(histogramFile);
+    }
+    if (!histograms.isEmpty()) {
+      print(histogramsDir, histograms);
+    }
+    return result;
+  }
+
+  private static final void print(final Path histogramsDir, final Map<StoredResult, Histogram> histograms) {
+    final int keyWidth = histograms.keySet()
+        .stream()
+        .mapToInt(storedResult -> storedResult.shortKey().length())
+        .max()
+        .orElse(0);
+    final String rowFormat = "%-" + keyWidth + "s  %12s  %12s  %12s  %12s  %12s%n";
+    final StringBuilder table = new StringBuilder(String.format(
+        "%n# sandbox: latency percentiles in nanoseconds, HdrHistogram logs are written to %s%n", histogramsDir));
+    table.append(String.format(rowFormat, "Benchmark", "samples", "p50", "p99", "p99.9", "max"));
+    histograms.forEach((storedResult, histogram) -> table.append(String.format(rowFormat,
+        storedResult.shortKey(),
+        histogram.getTotalCount(),
+        histogram.getValueAtPercentile(50),
+        histogram.getValueAtPercentile(99),
+        histogram.getValueAtPercentile(99.9),
+        histogram.getMaxValue())));
+    System.out.print(table);
+  }
+
+  /**
+   * @param scoreUnit A unit of a score in the {@link org.openjdk.jmh.annotations.Mode#SampleTime} mode, e.g., {@code "ns/op"}.
+   */
+  private static final double nanosecondsPerUnit(final String scoreUnit) {
+    final Double result = NANOSECONDS_PER_UNIT.get(scoreUnit.split("/")[0]);
+    if (result == null) {
+      throw new IllegalArgumentException(String.format("Unsupported unit %s", scoreUnit));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,336 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Defaults;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.WorkloadParams;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Comparison;
+import stincmale.sandbox.benchmarks.util.BaselineComparator.Verdict;
+
+/**
+ * Runs forks of benchmarks in parallel on disjoint sets of CPUs, which is meant for single-threaded benchmarks
+ * on machines with many CPUs. Forks of multithreaded benchmarks are run sequentially,
+ * because pinning them to a CPU set would limit the number of CPUs available to their threads.
+ * <p>
+ * The forks specified via {@link Options} are split between parallel runs, one run per CPU set,
+ * and each run is a separate JVM that runs JMH with forks {@linkplain CpuAffinity#pinnedJvm(String, List, Path) pinned} to its CPU set.
+ * Results of all runs are merged as if they were obtained by a single run, i.e., with the number of forks and the JVM specified via
+ * {@link Options}, and are written in the JMH JSON format.
+ * Logs of the runs are written to {@code <result file name>.parallel/}.
+ * Runs share the results directory, so profilers add the {@linkplain #runFileNameSuffix() index of a run} to names of the files they write,
+ * and flame graphs written by {@link FlameGraphProfiler} in different runs are merged after all runs are completed.
+ * <p>
+ * Parallel forks still share caches, memory bandwidth, power and thermal budget, etc., so their results may differ from the results
+ * of sequential forks. {@link #checkAgainstSequential(Options, Path, Path, BaselineComparator)}
+ * detects such differences by running the benchmarks sequentially and comparing the results.
+ * <p>
+ * If {@code taskset} is not available, forks are run sequentially.
+ */
+public final class ParallelForks {
+  private static final String RUN_IDX_PROPERTY = "sandbox.parallelForks.runIdx";
+  private final int cpusPerFork;
+
+  /**
+   * @param cpusPerFork The number of CPUs in each CPU set. A forked JVM uses CPUs not only for benchmark threads,
+   * but also for JIT compiler and GC threads, hence more than one CPU per single-threaded benchmark is recommended.
+   */
+  public ParallelForks(final int cpusPerFork) {
+    if (cpusPerFork < 1) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be positive", "cpusPerFork", cpusPerFork));
+    }
+    this.cpusPerFork = cpusPerFork;
+  }
+
+  /**
+   * Entry point of a parallel run.
+   *
+   * @param args {@code <serialized options file> <serialized results file>}.
+   */
+  public static final void main(final String... args) throws RunnerException {
+    final Options options;
+    try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(Paths.get(args[0])))) {
+      options = (Options)in.readObject();
+    } catch (final IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+    final Collection<RunResult> results = new Runner(options).run();
+    try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(Paths.get(args[1])))) {
+      out.writeObject(new ArrayList<>(results));
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return {@code "-run<index of the run>"} if called in the JVM of a parallel run, an empty string otherwise.
+   */
+  static final String runFileNameSuffix() {
+    final String runIdx = System.getProperty(RUN_IDX_PROPERTY);
+    return runIdx == null ? "" : runFileNameSuffix(Integer.parseInt(runIdx));
+  }
+
+  static final String runFileNameSuffix(final int runIdx) {
+    return "-run" + runIdx;
+  }
+
+  /**
+   * Runs forks in parallel on {@linkplain CpuAffinity#cpuSets(int) disjoint sets} of {@link #cpusPerFork} CPUs
+   * that do not share physical cores.
+   *
+   * @param resultFile A file where the results are written in the JMH JSON format.
+   */
+  public final Collection<RunResult> run(final Options options, final Path resultFile) throws RunnerException {
+    final List<List<Integer>> cpuSets = CpuAffinity.cpuSets(cpusPerFork);
+    final Collection<RunResult> result;
+    if (!CpuAffinity.isSupported()) {
+      result = runSequentially(options, resultFile, "taskset is not available");
+    } else if (cpuSets.size() < 2) {
+      result = runSequentially(options, resultFile, String.format(
+          "there are not enough cores with the CPUs %s for parallel forks with %d CPUs each", CpuAffinity.allowedCpus(), cpusPerFork));
+    } else {
+      result = run(options, resultFile, cpuSets);
+    }
+    return result;
+  }
+
+  /**
+   * Acts as {@link #run(Options, Path)} but uses the specified CPU sets, which is useful, e.g., to exclude CPUs used by other processes.
+   */
+  public final Collection<RunResult> run(final Options options, final Path resultFile, final List<List<Integer>> cpuSets)
+      throws RunnerException {
+    final int numberOfThreads = maxNumberOfThreads(options);
+    if (numberOfThreads > 1) {
+      return runSequentially(options, resultFile, String.format("the benchmarks use up to %d threads, "
+          + "while parallel forks are only meant for single-threaded benchmarks", numberOfThreads));
+    }
+    final int forks = options.getForkCount().orElse(Defaults.MEASUREMENT_FORKS);
+    final int numberOfRuns = Math.min(forks, cpuSets.size());
+    final String jvm = options.getJvm().orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    final String resultFileName = resultFile.getFileName().toString();
+    final Path dir = resultFile.resolveSibling(resultFileName + ".parallel").toAbsolutePath();
+    System.out.printf("%n# sandbox: running %d forks in %d parallel runs on CPU sets %s, logs are written to %s%n",
+        forks, numberOfRuns, cpuSets.subList(0, numberOfRuns), dir);
+    final List<Process> processes = new ArrayList<>();
+    final List<Path> logFiles = new ArrayList<>();
+    final List<Path> runResultsFiles = new ArrayList<>();
+    try {
+      Files.createDirectories(dir);
+      for (int runIdx = 0; runIdx < numberOfRuns; runIdx++) {
+        final int runForks = forks / numberOfRuns + (runIdx < forks % numberOfRuns ? 1 : 0);
+        final List<Integer> cpus = cpuSets.get(runIdx);
+        final Path optionsFile = dir.resolve("run" + runIdx + ".options");
+        final Path runResultsFile = dir.resolve("run" + runIdx + ".results");
+        final Path logFile = dir.resolve("run" + runIdx + ".log");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(optionsFile))) {
+          out.writeObject(new OptionsBuilder()
+              .parent(options)
+              .forks(runForks)
+              .jvm(CpuAffinity.pinnedJvm(jvm, cpus, dir).toString())
+              .result(dir.resolve("run" + runIdx + ".json").toString())
+              .resultFormat(ResultFormatType.JSON)
+              .build());
+        }
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        //parallel runs are separate JVMs, but they share the lock that prevents running multiple JMH instances at once
+        command.add("-Djmh.ignoreLock=true");
+        System.getProperties().stringPropertyNames().stream()
+            .filter(name -> name.startsWith("sandbox."))
+            .sorted()
+            .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+        command.add("-D" + RUN_IDX_PROPERTY + "=" + runIdx);
+        command.add(ParallelForks.class.getName());
+        command.add(optionsFile.toString());
+        command.add(runResultsFile.toString());
+        processes.add(new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(logFile.toFile())
+            .start());
+        logFiles.add(logFile);
+        runResultsFiles.add(runResultsFile);
+      }
+      for (int runIdx = 0; runIdx < processes.size(); runIdx++) {
+        if (processes.get(runIdx).waitFor() != 0) {
+          throw new RunnerException(String.format("The parallel run on CPUs %s failed, see %s", cpuSets.get(runIdx), logFiles.get(runIdx)));
+        }
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      processes.forEach(Process::destroy);
+    }
+    final Collection<RunResult> result = merge(runResultsFiles, forks, jvm);
+    write(result, resultFile);
+    if (options.getProfilers().stream().anyMatch(profiler -> profiler.getKlass().equals(FlameGraphProfiler.class.getName()))) {
+      FlameGraphProfiler.mergeParallelRuns(result, numberOfRuns);
+    }
+    ResultFormatFactory.getInstance(ResultFormatType.TEXT, System.out).writeOut(result);
+    return result;
+  }
+
+  /**
+   * Runs the benchmarks with sequential forks and reports results that differ from the results of parallel forks.
+   * A result is considered different if it is a {@linkplain Verdict#REGRESSION regression} or an {@linkplain Verdict#IMPROVEMENT improvement}
+   * according to the {@code comparator}.
+   *
+   * @param options Options used to run parallel forks.
+   * @param parallelResultFile A file with the results of parallel forks.
+   * @param sequentialResultFile A file where the results of sequential forks are written in the JMH JSON format.
+   * @return Comparisons of the results of parallel forks with the results of sequential forks that differ.
+   */
+  public static final List<Comparison> checkAgainstSequential(
+      final Options options, final Path parallelResultFile, final Path sequentialResultFile, final BaselineComparator comparator)
+      throws RunnerException {
+    try {
+      Files.createDirectories(sequentialResultFile.toAbsolutePath().getParent());
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    System.out.printf("%n# sandbox: running forks sequentially to check the results of parallel forks%n");
+    new Runner(new OptionsBuilder()
+        .parent(options)
+        .result(sequentialResultFile.toString())
+        .resultFormat(ResultFormatType.JSON)
+        .build())
+        .run();
+    final List<Comparison> result = comparator.compare(StoredResult.read(sequentialResultFile), StoredResult.read(parallelResultFile))
+        .stream()
+        .filter(comparison -> comparison.verdict() == Verdict.REGRESSION || comparison.verdict() == Verdict.IMPROVEMENT)
+        .collect(Collectors.toList());
+    if (result.isEmpty()) {
+      System.out.printf("%n# sandbox: results of parallel forks %s do not differ from results of sequential forks %s%n",
+          parallelResultFile, sequentialResultFile);
+    } else {
+      System.out.printf("%n# sandbox: WARNING results of parallel forks %s differ from results of sequential forks %s "
+              + "(REGRESSION means that parallel forks are worse):%n",
+          parallelResultFile, sequentialResultFile);
+      result.forEach(comparison -> System.out.println(comparison));
+    }
+    return result;
+  }
+
+  private static final Collection<RunResult> runSequentially(final Options options, final Path resultFile, final String reason)
+      throws RunnerException {
+    System.out.printf("%n# sandbox: running forks sequentially because %s%n", reason);
+    return new Runner(new OptionsBuilder()
+        .parent(options)
+        .result(resultFile.toString())
+        .resultFormat(ResultFormatType.JSON)
+        .build())
+        .run();
+  }
+
+  /**
+   * @return The maximal number of threads of the benchmarks included by the {@code options}.
+   * The number of threads of a benchmark is determined the same way JMH does it:
+   * {@link Options#getThreads()} takes precedence over {@link Threads}, and is rounded up to a multiple of the size of a group.
+   */
+  private static final int maxNumberOfThreads(final Options options) {
+    return BenchmarkList.defaultList()
+        .find(OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT), options.getIncludes(), options.getExcludes())
+        .stream()
+        .mapToInt(benchmark -> numberOfThreads(benchmark, options))
+        .max()
+        .orElse(1);
+  }
+
+  private static final int numberOfThreads(final BenchmarkListEntry benchmark, final Options options) {
+    final int groupSize = Arrays.stream(options.getThreadGroups().orElse(benchmark.getThreadGroups())).sum();
+    int result = options.getThreads().orElse(benchmark.getThreads().orElse(Defaults.THREADS));
+    if (result == Threads.MAX) {
+      result = Runtime.getRuntime().availableProcessors();
+    }
+    return groupSize > 0 && result % groupSize != 0 ? (result / groupSize + 1) * groupSize : result;
+  }
+
+  /**
+   * Merges results of the same benchmarks from different runs.
+   * The merged results have the number of forks and the JVM of a sequential run,
+   * because each run has only some of the {@code forks} and a JVM {@linkplain CpuAffinity#pinnedJvm(String, List, Path) pinned} to its CPUs.
+   */
+  private static final Collection<RunResult> merge(final List<Path> runResultsFiles, final int forks, final String jvm) {
+    final Map<String, BenchmarkParams> paramsByKey = new LinkedHashMap<>();
+    final Map<String, List<BenchmarkResult>> benchmarkResultsByKey = new LinkedHashMap<>();
+    for (final Path runResultsFile : runResultsFiles) {
+      final List<?> runResults;
+      try (InputStream in = Files.newInputStream(runResultsFile);
+          ObjectInputStream objectIn = new ObjectInputStream(in)) {
+        runResults = (List<?>)objectIn.readObject();
+      } catch (final IOException | ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+      for (final Object runResultObject : runResults) {
+        final RunResult runResult = (RunResult)runResultObject;
+        final String key = key(runResult.getParams());
+        paramsByKey.putIfAbsent(key, runResult.getParams());
+        benchmarkResultsByKey.computeIfAbsent(key, k -> new ArrayList<>()).addAll(runResult.getBenchmarkResults());
+      }
+    }
+    final List<RunResult> sortedResults = new ArrayList<>();
+    paramsByKey.forEach((key, params) -> sortedResults.add(new RunResult(params, benchmarkResultsByKey.get(key))));
+    sortedResults.sort(RunResult.DEFAULT_SORT_COMPARATOR);
+    return sortedResults.stream()
+        .map(runResult -> new RunResult(withForksAndJvm(runResult.getParams(), forks, jvm), runResult.getBenchmarkResults()))
+        .collect(Collectors.toList());
+  }
+
+  private static final BenchmarkParams withForksAndJvm(final BenchmarkParams params, final int forks, final String jvm) {
+    final WorkloadParams workloadParams = new WorkloadParams();
+    params.getParamsKeys().forEach(name -> workloadParams.put(name, params.getParam(name), 0));
+    return new BenchmarkParams(params.getBenchmark(), params.generatedBenchmark(), params.shouldSynchIterations(),
+        params.getThreads(), params.getThreadGroups(), params.getThreadGroupLabels(), forks, params.getWarmupForks(),
+        params.getWarmup(), params.getMeasurement(), params.getMode(), workloadParams, params.getTimeUnit(), params.getOpsPerInvocation(),
+        jvm, params.getJvmArgs(), params.getJdkVersion(), params.getVmName(), params.getVmVersion(), params.getJmhVersion(),
+        params.getTimeout());
+  }
+
+  private static final void write(final Collection<RunResult> results, final Path resultFile) {
+    try (OutputStream out = Files.newOutputStream(resultFile);
+        PrintStream printOut = new PrintStream(out, false, StandardCharsets.UTF_8)) {
+      ResultFormatFactory.getInstance(ResultFormatType.JSON, printOut).writeOut(results);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final String key(final BenchmarkParams params) {
+    return params.getBenchmark()
+        + params.getParamsKeys().stream().map(name -> name + "=" + params.getParam(name)).collect(Collectors.joining(",", "{", "}"))
+        + " " + params.getMode().shortLabel()
+        + " threads=" + params.getThreads();
+  }
+}
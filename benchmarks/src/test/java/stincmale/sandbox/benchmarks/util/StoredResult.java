@@ -0,0 +1,260 @@
+package stincmale.sandbox.benchmarks.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * A result of a single benchmark (a benchmark method with specific {@code @Param} values, mode and number of threads)
+ * read from a file in the <a href="https://github.com/openjdk/jmh">JMH</a> JSON
+ * {@linkplain org.openjdk.jmh.results.format.ResultFormatType#JSON result format}.
+ */
+public final class StoredResult {
+  private final String benchmark;
+  private final String mode;
+  private final int threads;
+  private final SortedMap<String, String> params;
+  private final String scoreUnit;
+  private final double score;
+  private final double scoreError;
+  private final double[] forkScores;
+  private final SortedMap<Double, Double> scorePercentiles;
+
+  private StoredResult(
+      final String benchmark,
+      final String mode,
+      final int threads,
+      final SortedMap<String, String> params,
+      final String scoreUnit,
+      final double score,
+      final double scoreError,
+      final double[] forkScores,
+      final SortedMap<Double, Double> scorePercentiles) {
+    this.benchmark = benchmark;
+    this.mode = mode;
+    this.threads = threads;
+    this.params = Collections.unmodifiableSortedMap(params);
+    this.scoreUnit = scoreUnit;
+    this.score = score;
+    this.scoreError = scoreError;
+    this.forkScores = forkScores;
+    this.scorePercentiles = Collections.unmodifiableSortedMap(scorePercentiles);
+  }
+
+  public static final List<StoredResult> read(final Path jsonResultFile) {
+    final JsonArray jsonResults;
+    try (Reader reader = Files.newBufferedReader(jsonResultFile, StandardCharsets.UTF_8)) {
+      jsonResults = JsonParser.parseReader(reader).getAsJsonArray();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    final List<StoredResult> result = new ArrayList<>();
+    for (final JsonElement jsonResultElement : jsonResults) {
+      final JsonObject jsonResult = jsonResultElement.getAsJsonObject();
+      final SortedMap<String, String> params = new TreeMap<>();
+      if (jsonResult.has("params")) {
+        for (final Map.Entry<String, JsonElement> param : jsonResult.getAsJsonObject("params").entrySet()) {
+          params.put(param.getKey(), param.getValue().getAsString());
+        }
+      }
+      final JsonObject primaryMetric = jsonResult.getAsJsonObject("primaryMetric");
+      result.add(new StoredResult(
+          jsonResult.get("benchmark").getAsString(),
+          jsonResult.get("mode").getAsString(),
+          jsonResult.get("threads").getAsInt(),
+          params,
+          primaryMetric.get("scoreUnit").getAsString(),
+          primaryMetric.get("score").getAsDouble(),
+          asDouble(primaryMetric.get("scoreError")),
+          forkScores(primaryMetric),
+          scorePercentiles(primaryMetric)));
+    }
+    return result;
+  }
+
+  /**
+   * Identifies a benchmark regardless of its results.
+   * Results with equal keys are comparable.
+   */
+  public final String key() {
+    return benchmark + (params.isEmpty() ? "" : params.toString()) + " " + mode + " threads=" + threads;
+  }
+
+  /**
+   * Acts as {@link #key()} but uses the simple name of the benchmark class, e.g., {@code "ListPerformanceTest.iterate"}
+   * instead of {@code "stincmale.sandbox.benchmarks.ListPerformanceTest.iterate"}.
+   */
+  public final String shortKey() {
+    return shortKeyIgnoringThreads() + " threads=" + threads;
+  }
+
+  /**
+   * Acts as {@link #shortKey()} but does not include the number of threads.
+   */
+  public final String shortKeyIgnoringThreads() {
+    return shortBenchmark() + (params.isEmpty() ? "" : params.toString()) + " " + mode;
+  }
+
+  /**
+   * @return A string that identifies the benchmark like {@link #shortKey()} does and may be used as a file name, e.g.,
+   * {@code "ListPerformanceTest.iterate-listDescriptor=LINKED_LIST-size=5000-thrpt-threads1"}.
+   */
+  public final String fileName() {
+    final StringBuilder result = new StringBuilder(shortBenchmark());
+    params.forEach((name, value) -> result.append('-')
+        .append(name)
+        .append('=')
+        .append(value));
+    result.append('-')
+        .append(mode)
+        .append("-threads")
+        .append(threads);
+    return result.toString().replaceAll("[^A-Za-z0-9._=-]", "_");
+  }
+
+  public final String benchmark() {
+    return benchmark;
+  }
+
+  /**
+   * @return The {@linkplain #benchmark() benchmark} with the simple name of the benchmark class, e.g., {@code "ListPerformanceTest.iterate"}.
+   */
+  public final String shortBenchmark() {
+    final int methodSeparatorIdx = benchmark.lastIndexOf('.');
+    return methodSeparatorIdx < 0
+        ? benchmark
+        : benchmark.substring(benchmark.lastIndexOf('.', methodSeparatorIdx - 1) + 1);
+  }
+
+  /**
+   * @return The {@linkplain org.openjdk.jmh.annotations.Mode#shortLabel() short label} of the benchmark mode.
+   */
+  public final String mode() {
+    return mode;
+  }
+
+  public final int threads() {
+    return threads;
+  }
+
+  public final SortedMap<String, String> params() {
+    return params;
+  }
+
+  public final String scoreUnit() {
+    return scoreUnit;
+  }
+
+  public final double score() {
+    return score;
+  }
+
+  /**
+   * @return {@link Double#NaN} if the error is unknown, e.g., if there is only one measurement.
+   */
+  public final double scoreError() {
+    return scoreError;
+  }
+
+  /**
+   * @return Scores of individual forks, i.e., scores aggregated from measurement iterations of each fork.
+   */
+  public final double[] forkScores() {
+    return forkScores.clone();
+  }
+
+  /**
+   * @return Percentiles of the score by their ranks, e.g., {@code 99.9 -> 1024.0}.
+   * JMH reports percentiles of iteration scores, or of all samples in the {@link org.openjdk.jmh.annotations.Mode#SampleTime} mode.
+   */
+  public final SortedMap<Double, Double> scorePercentiles() {
+    return scorePercentiles;
+  }
+
+  /**
+   * @return {@code true} iff bigger scores are better, e.g., for the {@link org.openjdk.jmh.annotations.Mode#Throughput} mode.
+   */
+  public final boolean higherIsBetter() {
+    return "thrpt".equals(mode);
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "{key=" + key()
+        + ", score=" + score
+        + ", scoreError=" + scoreError
+        + ", scoreUnit=" + scoreUnit
+        + ", forks=" + forkScores.length
+        + '}';
+  }
+
+  private static final double[] forkScores(final JsonObject primaryMetric) {
+    final List<Double> result = new ArrayList<>();
+    if (primaryMetric.has("rawData")) {
+      for (final JsonElement fork : primaryMetric.getAsJsonArray("rawData")) {
+        double sum = 0;
+        int count = 0;
+        for (final JsonElement iterationScore : fork.getAsJsonArray()) {
+          sum += iterationScore.getAsDouble();
+          count++;
+        }
+        if (count > 0) {
+          result.add(sum / count);
+        }
+      }
+    } else if (primaryMetric.has("rawDataHistogram")) {//Mode.SampleTime
+      for (final JsonElement fork : primaryMetric.getAsJsonArray("rawDataHistogram")) {
+        double sum = 0;
+        long count = 0;
+        for (final JsonElement iteration : fork.getAsJsonArray()) {
+          for (final JsonElement valueAndCount : iteration.getAsJsonArray()) {
+            final double value = valueAndCount.getAsJsonArray().get(0).getAsDouble();
+            final long valueCount = valueAndCount.getAsJsonArray().get(1).getAsLong();
+            sum += value * valueCount;
+            count += valueCount;
+          }
+        }
+        if (count > 0) {
+          result.add(sum / count);
+        }
+      }
+    }
+    return result.stream()
+        .mapToDouble(Double::doubleValue)
+        .toArray();
+  }
+
+  private static final SortedMap<Double, Double> scorePercentiles(final JsonObject primaryMetric) {
+    final SortedMap<Double, Double> result = new TreeMap<>();
+    if (primaryMetric.has("scorePercentiles")) {
+      for (final Map.Entry<String, JsonElement> percentile : primaryMetric.getAsJsonObject("scorePercentiles").entrySet()) {
+        result.put(Double.parseDouble(percentile.getKey()), asDouble(percentile.getValue()));
+      }
+    }
+    return result;
+  }
+
+  private static final double asDouble(final JsonElement jsonNumber) {
+    final String s = jsonNumber.getAsString();
+    return "NaN".equals(s) ? Double.NaN : Double.parseDouble(s);
+  }
+
+  static final Map<String, StoredResult> byKey(final List<StoredResult> results) {
+    return results.stream()
+        .collect(Collectors.toMap(StoredResult::key, r -> r, (r1, r2) -> r2, TreeMap::new));
+  }
+}
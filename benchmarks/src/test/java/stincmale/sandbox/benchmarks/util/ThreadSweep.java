@@ -0,0 +1,182 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with an increasing number of threads: 1, 2, 4, ..., and prints
+ * <a href="https://en.wikipedia.org/wiki/Speedup#Efficiency">scaling efficiency</a> and the knee point for each benchmark.
+ * <p>
+ * The scaling efficiency with n threads is {@code X(n) / (n * X(1))}, where {@code X(n)} is the throughput with n threads.
+ * For benchmarks measured in modes other than {@link org.openjdk.jmh.annotations.Mode#Throughput},
+ * the throughput is derived from the score as {@code n / score}.
+ * The knee point is the last number of threads after which increasing the number of threads
+ * gives less than a half of the ideal (linear) throughput gain, i.e., it is where the scalability curve bends.
+ */
+public final class ThreadSweep {
+  private static final double KNEE_MARGINAL_EFFICIENCY = 0.5;
+
+  private ThreadSweep() {
+  }
+
+  /**
+   * Acts as {@link #run(String, Options, int)} with {@code maxNumberOfThreads} equal to twice the number of available processors.
+   */
+  public static final Map<Integer, Collection<RunResult>> run(final String id, final Options options) throws RunnerException {
+    return run(id, options, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param id See {@link JmhRunner#run(String, Options)}. Results for each number of threads are identified by {@code <id>-threads<n>},
+   * e.g., {@code "AtomicApiComparisonTest-threads4"}.
+   * @param options {@link Options#getThreads()} is ignored.
+   * @param maxNumberOfThreads The maximal number of threads. It is used even if it is not a power of 2.
+   */
+  public static final Map<Integer, Collection<RunResult>> run(final String id, final Options options, final int maxNumberOfThreads)
+      throws RunnerException {
+    return run(id, options, numbersOfThreads(maxNumberOfThreads));
+  }
+
+  /**
+   * Acts as {@link #run(String, Options, int)} but uses the specified numbers of threads, e.g., 1, 4, 32.
+   */
+  public static final Map<Integer, Collection<RunResult>> run(final String id, final Options options, final List<Integer> numbersOfThreads)
+      throws RunnerException {
+    final Map<Integer, Collection<RunResult>> result = new TreeMap<>();
+    final Map<Integer, String> ids = new TreeMap<>();
+    for (final int numberOfThreads : numbersOfThreads) {
+      final String threadsId = id + "-threads" + numberOfThreads;
+      result.put(numberOfThreads, JmhRunner.run(threadsId, new OptionsBuilder()
+          .parent(options)
+          .threads(numberOfThreads)
+          .build()));
+      ids.put(numberOfThreads, threadsId);
+    }
+    print(id, ids);
+    return result;
+  }
+
+  /**
+   * @return 1, 2, 4, ..., {@code maxNumberOfThreads}.
+   */
+  public static final List<Integer> numbersOfThreads(final int maxNumberOfThreads) {
+    if (maxNumberOfThreads < 1) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be positive", "maxNumberOfThreads", maxNumberOfThreads));
+    }
+    final List<Integer> result = new ArrayList<>();
+    for (int numberOfThreads = 1; numberOfThreads < maxNumberOfThreads; numberOfThreads *= 2) {
+      result.add(numberOfThreads);
+    }
+    result.add(maxNumberOfThreads);
+    return result;
+  }
+
+  /**
+   * Prints a table with throughput, scaling efficiency and the knee point for each benchmark.
+   *
+   * @param ids Maps a number of threads to an identifier of the {@linkplain JmhRunner#resultFile(String) results}.
+   */
+  public static final void print(final String title, final Map<Integer, String> ids) {
+    final Map<String, Map<Integer, StoredResult>> resultsByNumberOfThreadsByBenchmark = new LinkedHashMap<>();
+    ids.forEach((numberOfThreads, id) -> {
+      for (final StoredResult storedResult : StoredResult.read(JmhRunner.resultFile(id))) {
+        resultsByNumberOfThreadsByBenchmark.computeIfAbsent(storedResult.shortKeyIgnoringThreads(), key -> new TreeMap<>())
+            .put(numberOfThreads, storedResult);
+      }
+    });
+    final int keyWidth = resultsByNumberOfThreadsByBenchmark.keySet()
+        .stream()
+        .mapToInt(String::length)
+        .max()
+        .orElse(0);
+    final int columnWidth = 18;
+    final StringBuilder table = new StringBuilder(String.format(
+        "%n# sandbox: thread scalability of %s (throughput (scaling efficiency))%n%-" + keyWidth + "s", title, "Benchmark"));
+    ids.keySet().forEach(numberOfThreads -> table.append(String.format("  %" + columnWidth + "s", numberOfThreads)));
+    table.append(String.format("  %5s  %5s  %s%n", "knee", "peak", "units"));
+    resultsByNumberOfThreadsByBenchmark.forEach((benchmark, resultsByNumberOfThreads) -> {
+      final Scalability scalability = new Scalability(resultsByNumberOfThreads);
+      table.append(String.format("%-" + keyWidth + "s", benchmark));
+      ids.keySet().forEach(numberOfThreads -> {
+        final Double throughput = scalability.throughputs.get(numberOfThreads);
+        table.append(String.format("  %" + columnWidth + "s", throughput == null
+            ? "-"
+            : String.format("%.3f (%.2f)", throughput, scalability.efficiency(numberOfThreads))));
+      });
+      table.append(String.format("  %5s  %5s  %s%n", scalability.knee(), scalability.peak(), scalability.unit));
+    });
+    System.out.print(table);
+  }
+
+  /**
+   * Throughputs of a benchmark with different numbers of threads.
+   */
+  static final class Scalability {
+    private final TreeMap<Integer, Double> throughputs;
+    private final String unit;
+
+    Scalability(final Map<Integer, StoredResult> resultsByNumberOfThreads) {
+      throughputs = new TreeMap<>();
+      String unit = "";
+      for (final Map.Entry<Integer, StoredResult> numberOfThreadsAndResult : resultsByNumberOfThreads.entrySet()) {
+        final int numberOfThreads = numberOfThreadsAndResult.getKey();
+        final StoredResult storedResult = numberOfThreadsAndResult.getValue();
+        if (storedResult.higherIsBetter()) {
+          throughputs.put(numberOfThreads, storedResult.score());
+          unit = storedResult.scoreUnit();
+        } else {//the score is time per operation per thread
+          throughputs.put(numberOfThreads, numberOfThreads / storedResult.score());
+          unit = "1/(" + storedResult.scoreUnit() + ")";
+        }
+      }
+      this.unit = unit;
+    }
+
+    /**
+     * @return Throughputs by the number of threads.
+     */
+    final NavigableMap<Integer, Double> throughputs() {
+      return Collections.unmodifiableNavigableMap(throughputs);
+    }
+
+    final String unit() {
+      return unit;
+    }
+
+    final double efficiency(final int numberOfThreads) {
+      final Map.Entry<Integer, Double> base = throughputs.firstEntry();
+      return (throughputs.get(numberOfThreads) / base.getValue()) / ((double)numberOfThreads / base.getKey());
+    }
+
+    final int knee() {
+      Map.Entry<Integer, Double> previous = throughputs.firstEntry();
+      for (final Map.Entry<Integer, Double> next : throughputs.tailMap(previous.getKey(), false).entrySet()) {
+        final double relativeThroughputGain = next.getValue() / previous.getValue() - 1;
+        final double relativeThreadsGain = (double)next.getKey() / previous.getKey() - 1;
+        if (relativeThroughputGain < KNEE_MARGINAL_EFFICIENCY * relativeThreadsGain) {
+          break;
+        }
+        previous = next;
+      }
+      return previous.getKey();
+    }
+
+    final int peak() {
+      return throughputs.entrySet()
+          .stream()
+          .max(Map.Entry.comparingByValue())
+          .orElseThrow()
+          .getKey();
+    }
+  }
+}
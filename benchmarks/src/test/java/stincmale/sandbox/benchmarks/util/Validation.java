@@ -0,0 +1,156 @@
+package stincmale.sandbox.benchmarks.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Checks that benchmarks which are meant to be equivalent actually are, so that a fast but wrong variant is caught before it is timed.
+ * Benchmark classes call such checks from a {@code validate} test, which is also called before running the benchmarks.
+ * Use {@code mvn test -f benchmarks/pom.xml -Dtest='*Test#validate'} to run only the checks.
+ */
+public final class Validation {
+  private Validation() {
+  }
+
+  /**
+   * Invokes the {@code operation} concurrently by {@code numberOfThreads} threads {@code operationsPerThread} times per thread,
+   * and checks that all returned values are distinct, as they must be for, e.g., {@link java.util.concurrent.atomic.AtomicLong#getAndIncrement()}.
+   *
+   * @param description Identifies the operation in the error message, e.g., the name of a benchmark.
+   * @param threadOperation Maps the index of a thread to the operation invoked by this thread,
+   * which allows using per-thread state, e.g., an instance of a {@link org.openjdk.jmh.annotations.Scope#Thread} state.
+   * @throws AssertionError If there are duplicate values.
+   */
+  public static final void assertUnique(
+      final String description, final int numberOfThreads, final int operationsPerThread, final IntFunction<LongSupplier> threadOperation) {
+    final long[] values = invokeConcurrently(numberOfThreads, operationsPerThread, threadOperation);
+    Arrays.sort(values);
+    int numberOfDuplicates = 0;
+    long firstDuplicate = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] == values[i - 1]) {
+        if (numberOfDuplicates == 0) {
+          firstDuplicate = values[i];
+        }
+        numberOfDuplicates++;
+      }
+    }
+    if (numberOfDuplicates > 0) {
+      throw new AssertionError(String.format("%s returned %d duplicate value(s) out of %d when run by %d threads, e.g., %d",
+          description, numberOfDuplicates, values.length, numberOfThreads, firstDuplicate));
+    }
+  }
+
+  /**
+   * Invokes the {@code operation} concurrently by {@code numberOfThreads} threads {@code operationsPerThread} times per thread,
+   * and checks that the {@code count} is equal to the total number of invocations,
+   * as it must be for, e.g., {@link java.util.concurrent.atomic.LongAdder#increment()}.
+   *
+   * @param description See {@link #assertUnique(String, int, int, IntFunction)}.
+   * @param threadOperation See {@link #assertUnique(String, int, int, IntFunction)}.
+   * @param count Returns the count after all invocations of the operations are completed.
+   * @throws AssertionError If the count is wrong.
+   */
+  public static final void assertCounted(final String description, final int numberOfThreads, final int operationsPerThread,
+      final IntFunction<Runnable> threadOperation, final LongSupplier count) {
+    runConcurrently(numberOfThreads, operationsPerThread, threadOperation);
+    final long expectedCount = (long)numberOfThreads * operationsPerThread;
+    final long actualCount = count.getAsLong();
+    if (actualCount != expectedCount) {
+      throw new AssertionError(String.format("%s counted %d instead of %d when run by %d threads",
+          description, actualCount, expectedCount, numberOfThreads));
+    }
+  }
+
+  /**
+   * Invokes the {@code operation} concurrently by {@code numberOfThreads} threads {@code operationsPerThread} times per thread,
+   * and checks that the {@code accumulatedValue} is equal to the {@code expectedValue},
+   * as it must be for, e.g., {@link java.util.concurrent.atomic.LongAccumulator#accumulate(long)} with {@link Math#max(long, long)}.
+   *
+   * @param description See {@link #assertUnique(String, int, int, IntFunction)}.
+   * @param threadOperation See {@link #assertUnique(String, int, int, IntFunction)}.
+   * @param accumulatedValue Returns the accumulated value after all invocations of the operations are completed.
+   * @throws AssertionError If the accumulated value is wrong.
+   */
+  public static final void assertAccumulated(final String description, final int numberOfThreads, final int operationsPerThread,
+      final IntFunction<Runnable> threadOperation, final LongSupplier accumulatedValue, final long expectedValue) {
+    runConcurrently(numberOfThreads, operationsPerThread, threadOperation);
+    final long actualValue = accumulatedValue.getAsLong();
+    if (actualValue != expectedValue) {
+      throw new AssertionError(String.format("%s accumulated %d instead of %d when run by %d threads",
+          description, actualValue, expectedValue, numberOfThreads));
+    }
+  }
+
+  /**
+   * Acts as {@link #assertAccumulated(String, int, int, IntFunction, LongSupplier, long)} for operations that accumulate multiple values,
+   * e.g., increment buckets of a histogram.
+   */
+  public static final void assertAccumulated(final String description, final int numberOfThreads, final int operationsPerThread,
+      final IntFunction<Runnable> threadOperation, final Supplier<long[]> accumulatedValues, final long[] expectedValues) {
+    runConcurrently(numberOfThreads, operationsPerThread, threadOperation);
+    final long[] actualValues = accumulatedValues.get();
+    if (!Arrays.equals(actualValues, expectedValues)) {
+      throw new AssertionError(String.format("%s accumulated %s instead of %s when run by %d threads",
+          description, Arrays.toString(actualValues), Arrays.toString(expectedValues), numberOfThreads));
+    }
+  }
+
+  private static final void runConcurrently(
+      final int numberOfThreads, final int operationsPerThread, final IntFunction<Runnable> threadOperation) {
+    invokeConcurrently(numberOfThreads, operationsPerThread, threadIdx -> {
+      final Runnable operation = threadOperation.apply(threadIdx);
+      return () -> {
+        operation.run();
+        return 0;
+      };
+    });
+  }
+
+  /**
+   * @return Values returned by the operations.
+   */
+  private static final long[] invokeConcurrently(
+      final int numberOfThreads, final int operationsPerThread, final IntFunction<LongSupplier> threadOperation) {
+    final CyclicBarrier start = new CyclicBarrier(numberOfThreads);
+    final List<Callable<long[]>> tasks = new ArrayList<>(numberOfThreads);
+    for (int threadIdx = 0; threadIdx < numberOfThreads; threadIdx++) {
+      final LongSupplier operation = threadOperation.apply(threadIdx);
+      tasks.add(() -> {
+        final long[] result = new long[operationsPerThread];
+        start.await();//maximizes contention
+        for (int i = 0; i < operationsPerThread; i++) {
+          result[i] = operation.getAsLong();
+        }
+        return result;
+      });
+    }
+    final long[] values = new long[Math.multiplyExact(numberOfThreads, operationsPerThread)];
+    final ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    try {
+      int threadIdx = 0;
+      for (final Future<long[]> future : executor.invokeAll(tasks)) {
+        System.arraycopy(future.get(), 0, values, threadIdx * operationsPerThread, operationsPerThread);
+        threadIdx++;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (final ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+    return values;
+  }
+}
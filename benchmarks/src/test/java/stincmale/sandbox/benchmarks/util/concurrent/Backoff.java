@@ -0,0 +1,102 @@
+package stincmale.sandbox.benchmarks.util.concurrent;
+
+import static java.lang.Math.min;
+import java.util.concurrent.ThreadLocalRandom;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+
+/**
+ * Strategies of backing off after a failed attempt to update contended shared data, e.g., a failed CAS.
+ * Backoff reduces contention by making a thread wait before retrying,
+ * which gives other threads a chance to succeed instead of failing together.
+ * <p>
+ * Note that parking for any duration usually takes tens of microseconds because it involves the OS scheduler,
+ * while spinning via {@link Thread#onSpinWait()} takes tens of nanoseconds per iteration.
+ */
+public enum Backoff {
+  /**
+   * Parks for {@code 2 * numberOfFailures} ns, but not longer than 10 ns.
+   */
+  PARK_LINEAR {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      parkNanos(min(numberOfFailures * LINEAR_FACTOR, MAX_LINEAR_PARK_NANOS));
+    }
+  },
+  /**
+   * Spins for {@code numberOfFailures} iterations, but not more than {@value #MAX_SPINS} iterations.
+   */
+  SPIN {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      spin(min(numberOfFailures, MAX_SPINS));
+    }
+  },
+  /**
+   * Spins for a random number of iterations from {@code [1, 2^(numberOfFailures - 1)]}, but not more than {@value #MAX_SPINS} iterations,
+   * a.k.a. truncated exponential backoff with full jitter. Jitter prevents threads that failed together from retrying together.
+   */
+  EXPONENTIAL_JITTER {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      spin(1 + ThreadLocalRandom.current().nextInt(exponential(1, numberOfFailures, MAX_SPINS)));
+    }
+  },
+  /**
+   * Calls {@link Thread#yield()}, which lets the OS run another thread on the CPU, if there is one ready to run.
+   */
+  YIELD {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      Thread.yield();
+    }
+  },
+  /**
+   * Parks for {@code 2^(numberOfFailures - 1)} µs, but not longer than {@value #MAX_ESCALATING_PARK_NANOS} ns.
+   */
+  PARK_ESCALATING {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      parkNanos(exponential(MIN_ESCALATING_PARK_NANOS, numberOfFailures, MAX_ESCALATING_PARK_NANOS));
+    }
+  },
+  /**
+   * Acts as {@link #EXPONENTIAL_JITTER} for the first {@value #SPINNING_FAILURES} failures, and as {@link #PARK_ESCALATING} afterwards,
+   * so that short contention is resolved without involving the OS scheduler, while long contention does not waste CPU time.
+   */
+  SPIN_THEN_PARK {
+    @Override
+    public final void backoff(final int numberOfFailures) {
+      if (numberOfFailures <= SPINNING_FAILURES) {
+        EXPONENTIAL_JITTER.backoff(numberOfFailures);
+      } else {
+        PARK_ESCALATING.backoff(numberOfFailures - SPINNING_FAILURES);
+      }
+    }
+  };
+
+  private static final int LINEAR_FACTOR = 2;
+  private static final int MAX_LINEAR_PARK_NANOS = 10;
+  private static final int MAX_SPINS = 1024;
+  private static final int MIN_ESCALATING_PARK_NANOS = 1_000;
+  private static final int MAX_ESCALATING_PARK_NANOS = 100_000;
+  private static final int SPINNING_FAILURES = 8;
+
+  /**
+   * @param numberOfFailures The number of consecutive failed attempts, starting from 1.
+   */
+  public abstract void backoff(int numberOfFailures);
+
+  private static final void spin(final int iterations) {
+    for (int i = 0; i < iterations; i++) {
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * @return {@code min(initial * 2^(numberOfFailures - 1), max)}.
+   */
+  private static final int exponential(final int initial, final int numberOfFailures, final int max) {
+    final int shift = numberOfFailures - 1;
+    return shift >= Integer.numberOfLeadingZeros(initial) - 1 ? max : min(initial << shift, max);
+  }
+}
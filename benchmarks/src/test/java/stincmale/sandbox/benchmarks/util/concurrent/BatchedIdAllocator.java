@@ -0,0 +1,84 @@
+package stincmale.sandbox.benchmarks.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates unique IDs 0, 1, 2, ... by reserving blocks of consecutive IDs from a shared counter with a single
+ * {@link AtomicLong#getAndAdd(long)} per block and handing out IDs from a thread-local block,
+ * so that the contended counter is updated once per block instead of once per ID.
+ * <p>
+ * The size of the next block of a thread adapts to contention: it is doubled if other threads reserved IDs since the previous block
+ * of the thread was reserved, i.e., if the counter is shared, and is halved otherwise.
+ * Thus a thread that allocates alone reserves small blocks, while threads that allocate concurrently reserve big blocks.
+ * <p>
+ * The price is that IDs are ordered only within a thread, and that IDs are not dense:
+ * unused IDs of blocks owned by threads that stopped allocating are never allocated.
+ * At most {@link #maxBlockSize()} IDs per thread are wasted this way.
+ */
+public final class BatchedIdAllocator {
+  private final AtomicLong counter;
+  private final int minBlockSize;
+  private final int maxBlockSize;
+  private final ThreadLocal<Block> block;
+
+  /**
+   * @param minBlockSize The size of the first block of a thread and the minimal block size. Must be positive.
+   * @param maxBlockSize The maximal block size. Must not be less than {@code minBlockSize}.
+   */
+  public BatchedIdAllocator(final int minBlockSize, final int maxBlockSize) {
+    if (minBlockSize < 1) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must be positive", "minBlockSize", minBlockSize));
+    }
+    if (maxBlockSize < minBlockSize) {
+      throw new IllegalArgumentException(String.format("The argument %s=%s must not be less than %s=%s",
+          "maxBlockSize", maxBlockSize, "minBlockSize", minBlockSize));
+    }
+    counter = new AtomicLong();
+    this.minBlockSize = minBlockSize;
+    this.maxBlockSize = maxBlockSize;
+    block = ThreadLocal.withInitial(() -> new Block(minBlockSize));
+  }
+
+  public final long nextId() {
+    final Block b = block.get();
+    if (b.next == b.end) {
+      reserve(b);
+    }
+    return b.next++;
+  }
+
+  public final int minBlockSize() {
+    return minBlockSize;
+  }
+
+  public final int maxBlockSize() {
+    return maxBlockSize;
+  }
+
+  /**
+   * @return The number of reserved IDs, which is not less than the number of allocated IDs.
+   */
+  public final long reserved() {
+    return counter.get();
+  }
+
+  private final void reserve(final Block b) {
+    final long start = counter.getAndAdd(b.size);
+    final boolean contended = start != b.end;
+    b.next = start;
+    b.end = start + b.size;
+    b.size = contended
+        ? (b.size > maxBlockSize / 2 ? maxBlockSize : 2 * b.size)
+        : Math.max(b.size / 2, minBlockSize);
+  }
+
+  private static final class Block {
+    private long next;
+    private long end;
+    private int size;//the size of the next block
+
+    private Block(final int size) {
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package stincmale.sandbox.benchmarks.util.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A lock-free accumulator of a single {@code long} value updated in a CAS loop, e.g., a running maximum.
+ * <p>
+ * Before attempting a CAS, {@link #accumulate(long)} computes the new value from the current one and skips the CAS if the value would not change.
+ * This fast path makes a big difference for functions like {@link Math#max(long, long)}, for which most updates do not change the value
+ * once it has settled: such updates only read the shared value, and a read, unlike a CAS, does not take the cache line with the value
+ * away from other CPUs. Reading the value before the CAS also lets a failed CAS be retried with the witness value
+ * returned by {@link VarHandle#compareAndExchange(Object...)} instead of rereading it.
+ * <p>
+ * Unlike {@link java.util.concurrent.atomic.LongAccumulator}, which applies the function to combine its cells,
+ * this accumulator applies the function only to the current value and an argument of {@link #accumulate(long)},
+ * so functions like the sum of squares {@code (acc, x) -> acc + x * x} are also supported.
+ * The function must still be side-effect-free and the result must not depend on the order of updates,
+ * because the order of concurrent updates is not defined.
+ */
+public final class CasAccumulator {
+  private static final VarHandle VALUE;
+
+  static {
+    try {
+      VALUE = MethodHandles.lookup().findVarHandle(CasAccumulator.class, "value", long.class);
+    } catch (final NoSuchFieldException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final LongBinaryOperator function;
+  private final long identity;
+  private volatile long value;
+
+  /**
+   * @param function Maps the current value and an argument of {@link #accumulate(long)} to the new value.
+   * @param identity The initial value.
+   */
+  public CasAccumulator(final LongBinaryOperator function, final long identity) {
+    this.function = function;
+    this.identity = identity;
+    value = identity;
+  }
+
+  public static final CasAccumulator max() {
+    return new CasAccumulator(Math::max, Long.MIN_VALUE);
+  }
+
+  public static final CasAccumulator min() {
+    return new CasAccumulator(Math::min, Long.MAX_VALUE);
+  }
+
+  /**
+   * Overflows silently, as {@code long} arithmetic does.
+   */
+  public static final CasAccumulator sumOfSquares() {
+    return new CasAccumulator((acc, x) -> acc + x * x, 0);
+  }
+
+  public final void accumulate(final long x) {
+    long v = value;
+    while (true) {
+      final long newV = function.applyAsLong(v, x);
+      if (newV == v) {//the fast path
+        return;
+      }
+      final long witness = (long)VALUE.compareAndExchange(this, v, newV);
+      if (witness == v) {
+        return;
+      }
+      v = witness;
+    }
+  }
+
+  public final long get() {
+    return value;
+  }
+
+  /**
+   * Sets the value to the identity. Concurrent updates may be lost.
+   */
+  public final void reset() {
+    value = identity;
+  }
+
+  @Override
+  public final String toString() {
+    return String.valueOf(get());
+  }
+}
@@ -0,0 +1,111 @@
+package stincmale.sandbox.benchmarks.util.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A counter based on <a href="https://doi.org/10.1145/1810479.1810540">flat combining</a>:
+ * instead of updating the shared value, a thread publishes a request in its own record and waits,
+ * while the thread that holds the combiner lock applies all published requests to the value in one pass over the records.
+ * <p>
+ * Unlike {@link java.util.concurrent.atomic.LongAdder}, the counter has exact {@link #getAndIncrement()} semantics:
+ * the returned values are unique and have no gaps, as with {@link java.util.concurrent.atomic.AtomicLong#getAndIncrement()}.
+ * Unlike a CAS loop, the value is updated by a single thread at a time, hence the cache line with the value
+ * does not move between CPUs when contention grows; instead, each waiting thread spins on its own record.
+ * The price is the latency of waiting for a combiner and a pass over the records, which makes the counter slower than
+ * {@link java.util.concurrent.atomic.AtomicLong#getAndIncrement()} when there is little contention.
+ * <p>
+ * A record is created for each thread that uses the counter and is never removed, so the counter is only suitable for a bounded set of threads,
+ * e.g., a thread pool.
+ */
+public final class FlatCombiningCounter {
+  private static final int SPINS_BEFORE_YIELD = 128;
+  private static final VarHandle HEAD;
+  private static final VarHandle LOCK;
+
+  static {
+    try {
+      HEAD = MethodHandles.lookup().findVarHandle(FlatCombiningCounter.class, "head", Record.class);
+      LOCK = MethodHandles.lookup().findVarHandle(FlatCombiningCounter.class, "lock", int.class);
+    } catch (final NoSuchFieldException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final ThreadLocal<Record> record;
+  private volatile Record head;//the publication list
+  private volatile int lock;//the combiner lock
+  private volatile long value;//written only by the combiner
+
+  public FlatCombiningCounter() {
+    record = ThreadLocal.withInitial(this::newRecord);
+  }
+
+  public final long getAndIncrement() {
+    final Record r = record.get();
+    r.pending = true;
+    for (int spins = 1; ; spins++) {
+      if (!r.pending) {//a combiner applied the request
+        return r.result;
+      }
+      if (lock == 0 && LOCK.compareAndSet(this, 0, 1)) {
+        try {
+          combine();
+        } finally {
+          lock = 0;
+        }
+        return r.result;//combine applied the request of this thread too, because it was published before
+      }
+      if (spins % SPINS_BEFORE_YIELD == 0) {//lets the combiner run if there are more threads than CPUs
+        Thread.yield();
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  /**
+   * @return The number of increments applied so far.
+   */
+  public final long get() {
+    return value;
+  }
+
+  @Override
+  public final String toString() {
+    return String.valueOf(get());
+  }
+
+  /**
+   * Must be called only by the holder of the {@link #lock}.
+   */
+  private final void combine() {
+    long v = value;
+    for (Record r = head; r != null; r = r.next) {
+      if (r.pending) {
+        r.result = v++;
+        r.pending = false;//publishes the result
+      }
+    }
+    value = v;
+  }
+
+  private final Record newRecord() {
+    final Record r = new Record();
+    Record h;
+    do {
+      h = head;
+      r.next = h;
+    } while (!HEAD.compareAndSet(this, h, r));
+    return r;
+  }
+
+  private static final class Record {
+    private Record next;//safely published via the volatile write of head
+    private long result;//published via the volatile write of pending
+    private volatile boolean pending;
+
+    private Record() {
+    }
+  }
+}
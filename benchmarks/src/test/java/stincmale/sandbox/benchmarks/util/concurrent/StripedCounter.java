@@ -0,0 +1,235 @@
+package stincmale.sandbox.benchmarks.util.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A counter that spreads contended updates over multiple cells, which trades memory and the cost of reading the counter
+ * for the throughput of updating it, similarly to {@link java.util.concurrent.atomic.LongAdder}.
+ * <ul>
+ *   <li>Updates are applied to the base value until it is contended, so an uncontended counter does not allocate cells.</li>
+ *   <li>Each cell is padded so that no two cells, and no cell and other data, share a cache line, otherwise threads updating different cells
+ *   would still contend because of false sharing. Padding is {@value #PADDING_BYTES} bytes on both sides of a value
+ *   because some CPUs, e.g., Intel ones, prefetch cache lines in adjacent pairs.</li>
+ *   <li>A thread selects a cell by its probe, which is a per-thread hash that is changed each time an update of the selected cell fails,
+ *   so that threads colliding on a cell move to different cells. The number of cells is doubled when threads keep colliding,
+ *   up to the number of available processors rounded up to a power of 2, because more threads than processors cannot update cells
+ *   at the same time.</li>
+ * </ul>
+ * {@link #sum()} is not a snapshot: increments that happen concurrently with it may or may not be counted.
+ * {@link #exactSum()} is a snapshot at the cost of retrying until cells stop changing.
+ */
+public final class StripedCounter {
+  private static final int PADDING_BYTES = 128;
+  private static final int INITIAL_NUMBER_OF_CELLS = 2;
+  private static final int MAX_NUMBER_OF_CELLS = ceilPow2(Runtime.getRuntime().availableProcessors());
+  private static final int COLLISIONS_BEFORE_GROWTH = 2;
+  private static final ThreadLocal<Probe> probe = ThreadLocal.withInitial(Probe::new);
+  private static final VarHandle BASE;
+  private static final VarHandle CELLS_BUSY;
+
+  static {
+    try {
+      BASE = MethodHandles.lookup().findVarHandle(StripedCounter.class, "base", long.class);
+      CELLS_BUSY = MethodHandles.lookup().findVarHandle(StripedCounter.class, "cellsBusy", int.class);
+    } catch (final NoSuchFieldException | IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private volatile long base;
+  private volatile Cell[] cells;
+  private volatile int cellsBusy;//a spin lock that guards the creation and growth of cells
+
+  public StripedCounter() {
+  }
+
+  public final void increment() {
+    add(1);
+  }
+
+  public final void add(final long x) {
+    final Cell[] cs = cells;
+    if (cs == null) {
+      final long b = base;
+      if (!BASE.compareAndSet(this, b, b + x)) {
+        addContended(x);
+      }
+    } else {
+      final Cell cell = cs[probe.get().value & (cs.length - 1)];
+      final long v = cell.value;
+      if (!Cell.VALUE.compareAndSet(cell, v, v + x)) {
+        addContended(x);
+      }
+    }
+  }
+
+  /**
+   * @return The sum of all increments that happened-before this method was called, and of some of the concurrent ones.
+   */
+  public final long sum() {
+    long result = base;
+    final Cell[] cs = cells;
+    if (cs != null) {
+      for (final Cell cell : cs) {
+        result += cell.value;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value that the counter had at some point in time between the invocation of this method and its completion.
+   * The method reads all cells repeatedly until two consecutive reads give the same values,
+   * so it may take long if the counter is updated continuously.
+   * The result is exact provided that the counter is only incremented, i.e., {@link #add(long)} is called only with positive values,
+   * otherwise a cell that returns to a value it had in a previous read makes the result inexact.
+   */
+  public final long exactSum() {
+    Cell[] previousCells = null;
+    long[] previousValues = null;
+    while (true) {
+      final long b = base;
+      final Cell[] cs = cells;
+      final long[] values = new long[cs == null ? 1 : cs.length + 1];
+      values[0] = b;
+      for (int i = 1; i < values.length; i++) {
+        values[i] = cs[i - 1].value;
+      }
+      if (previousValues != null && cs == previousCells && Arrays.equals(values, previousValues)) {
+        return Arrays.stream(values).sum();
+      }
+      previousCells = cs;
+      previousValues = values;
+      Thread.onSpinWait();
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return String.valueOf(sum());
+  }
+
+  private final void addContended(final long x) {
+    final Probe p = probe.get();
+    for (int collisions = 0; ; ) {
+      final Cell[] cs = cells;
+      if (cs == null) {
+        if (cellsBusy == 0 && CELLS_BUSY.compareAndSet(this, 0, 1)) {
+          try {
+            if (cells == null) {
+              cells = newCells(new Cell[0], INITIAL_NUMBER_OF_CELLS);
+            }
+          } finally {
+            cellsBusy = 0;
+          }
+        } else {//another thread is creating cells, fall back to the base
+          final long b = base;
+          if (BASE.compareAndSet(this, b, b + x)) {
+            return;
+          }
+        }
+      } else {
+        final Cell cell = cs[p.value & (cs.length - 1)];
+        final long v = cell.value;
+        if (Cell.VALUE.compareAndSet(cell, v, v + x)) {
+          return;
+        }
+        p.advance();
+        collisions++;
+        if (collisions >= COLLISIONS_BEFORE_GROWTH && cs.length < MAX_NUMBER_OF_CELLS
+            && cellsBusy == 0 && CELLS_BUSY.compareAndSet(this, 0, 1)) {
+          try {
+            if (cells == cs) {
+              cells = newCells(cs, 2 * cs.length);
+            }
+          } finally {
+            cellsBusy = 0;
+          }
+          collisions = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return A copy of the {@code cells} extended with new cells to the specified length.
+   */
+  private static final Cell[] newCells(final Cell[] cells, final int length) {
+    final Cell[] result = Arrays.copyOf(cells, length);
+    for (int i = cells.length; i < length; i++) {
+      result[i] = new Cell();
+    }
+    return result;
+  }
+
+  private static final int ceilPow2(final int x) {
+    return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+  }
+
+  /**
+   * Fields of a superclass are laid out before fields of a subclass, which guarantees that the value is surrounded by padding,
+   * while the order of fields declared in a single class is up to the JVM.
+   */
+  @SuppressWarnings("unused")
+  private abstract static class CellLeftPadding {
+    private long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+
+    private CellLeftPadding() {
+    }
+  }
+
+  private abstract static class CellValue extends CellLeftPadding {
+    protected volatile long value;
+
+    private CellValue() {
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static final class Cell extends CellValue {
+    private static final VarHandle VALUE;
+
+    static {
+      try {
+        VALUE = MethodHandles.lookup().findVarHandle(CellValue.class, "value", long.class);
+      } catch (final NoSuchFieldException | IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+
+    private Cell() {
+    }
+  }
+
+  /**
+   * A per-thread hash used to select a cell. Initial values are spread by the golden ratio, as in {@link java.util.concurrent.ThreadLocalRandom},
+   * so that threads start with different cells.
+   */
+  private static final class Probe {
+    private static final AtomicInteger seeder = new AtomicInteger();
+    private static final int SEED_INCREMENT = 0x9e3779b9;
+
+    private int value;
+
+    private Probe() {
+      final int seed = seeder.addAndGet(SEED_INCREMENT);
+      value = seed == 0 ? 1 : seed;//xorshift never leaves 0
+    }
+
+    /**
+     * Advances the value with Marsaglia's xorshift.
+     */
+    private final void advance() {
+      int v = value;
+      v ^= v << 13;
+      v ^= v >>> 17;
+      v ^= v << 5;
+      value = v;
+    }
+  }
+}